@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AspectRatioBenchmark {
+
+    @Benchmark
+    public void of(SizeLists sizes, Blackhole blackhole) {
+        for (Size size : sizes.pictureSizes) {
+            blackhole.consume(AspectRatio.of(size.getWidth(), size.getHeight()));
+        }
+    }
+
+    @Benchmark
+    public void matches(SizeLists sizes, Blackhole blackhole) {
+        AspectRatio ratio = Constants.DEFAULT_ASPECT_RATIO;
+        for (Size size : sizes.pictureSizes) {
+            blackhole.consume(ratio.matches(size));
+        }
+    }
+
+}
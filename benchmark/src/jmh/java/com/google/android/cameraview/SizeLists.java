@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Preview and picture size lists for the benchmarks: unsorted, mixing many aspect ratios, with a
+ * few sizes that are only roughly of a common ratio.
+ *
+ * <p>The 20 entry lists are typed in after the shape of a Camera1 device. The 60 and 200 entry
+ * lists are synthetic grids generated from {@link #WIDTHS} and {@link #RATIOS}; they are not
+ * recorded from any device and only scale the list length and the ratio mix.</p>
+ */
+@State(Scope.Benchmark)
+public class SizeLists {
+
+    /**
+     * Preview sizes in the shape of a Nexus 5-class back camera through Camera1.
+     */
+    private static final int[] CAMERA1_PREVIEW = {
+            1920, 1080, 1440, 1080, 1280, 960, 1280, 768, 1280, 720, 1024, 768, 960, 720,
+            960, 540, 864, 480, 800, 600, 800, 480, 768, 432, 720, 480, 640, 480, 640, 360,
+            480, 360, 480, 320, 352, 288, 320, 240, 176, 144,
+    };
+
+    /**
+     * Picture sizes in the shape of a Nexus 5-class back camera through Camera1.
+     */
+    private static final int[] CAMERA1_PICTURE = {
+            3264, 2448, 3264, 1836, 2592, 1944, 2592, 1458, 2048, 1536, 2048, 1152, 1920, 1440,
+            1920, 1080, 1600, 1200, 1600, 900, 1280, 960, 1280, 768, 1280, 720, 1024, 768,
+            800, 600, 800, 480, 720, 480, 640, 480, 352, 288, 320, 240,
+    };
+
+    /** Widths the synthetic grids combine with each of {@link #RATIOS}. */
+    private static final int[] WIDTHS = {
+            4608, 4032, 4000, 3840, 3264, 3200, 3000, 2880, 2592, 2560, 2400, 2304, 2160, 2048,
+            1920, 1728, 1600, 1536, 1440, 1280, 1200, 1080, 1024, 960, 864, 800, 768, 720, 640,
+            600, 576, 480, 432, 400, 352, 320, 288, 240, 176,
+    };
+
+    /** x, y pairs; 11:9 and 5:3 produce heights that are not exactly of the ratio. */
+    private static final int[] RATIOS = {4, 3, 16, 9, 1, 1, 3, 2, 18, 9, 5, 4, 11, 9, 5, 3};
+
+    /** Surface sizes {@code chooseOptimalSize} is typically asked for, longer side first. */
+    static final int[] SURFACES = {1920, 1080, 1280, 720, 2560, 1440, 800, 480};
+
+    /**
+     * Number of sizes in each list. 20 picks the Camera1-shaped lists; 60 and 200 pick synthetic
+     * grids of the lengths Camera2 outputs can reach.
+     */
+    @Param({"20", "60", "200"})
+    public int count;
+
+    public Size[] previewSizes;
+
+    public Size[] pictureSizes;
+
+    @Setup
+    public void setUp() {
+        if (count == 20) {
+            previewSizes = toSizes(CAMERA1_PREVIEW);
+            pictureSizes = toSizes(CAMERA1_PICTURE);
+        } else {
+            // Preview grids stop at 1080p widths; picture grids use every width
+            previewSizes = generate(count, 1920);
+            pictureSizes = generate(count, Integer.MAX_VALUE);
+        }
+    }
+
+    private static Size[] toSizes(int[] dimensions) {
+        Size[] sizes = new Size[dimensions.length / 2];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = new Size(dimensions[i * 2], dimensions[i * 2 + 1]);
+        }
+        return sizes;
+    }
+
+    private static Size[] generate(int count, int maxWidth) {
+        Set<Size> sizes = new LinkedHashSet<>();
+        outer:
+        for (int pass = 0; ; pass++) {
+            for (int width : WIDTHS) {
+                // Later passes shave a few pixels off, like the cropped sizes some HALs add
+                int w = width - pass * 16;
+                if (w > maxWidth || w <= 0) {
+                    continue;
+                }
+                for (int r = 0; r < RATIOS.length; r += 2) {
+                    int h = (w * RATIOS[r + 1] / RATIOS[r]) & ~1;
+                    if (h > 0 && sizes.add(new Size(w, h)) && sizes.size() == count) {
+                        break outer;
+                    }
+                }
+            }
+        }
+        return sizes.toArray(new Size[count]);
+    }
+
+}
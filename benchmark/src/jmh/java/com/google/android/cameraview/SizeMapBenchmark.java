@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Covers what the backends do with the size lists on every start and orientation change.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SizeMapBenchmark {
+
+    /** A 1080p phone in portrait. */
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 1920;
+
+    @State(Scope.Benchmark)
+    public static class Maps {
+
+        SizeMap preview;
+
+        SizeMap picture;
+
+        AspectRatio ratio;
+
+        final AspectRatioIntersection intersection = new AspectRatioIntersection();
+
+        @Setup
+        public void setUp(SizeLists sizes) {
+            preview = fill(sizes.previewSizes);
+            picture = fill(sizes.pictureSizes);
+            ratio = AspectRatioIntersection.compute(preview, picture, VIEW_WIDTH, VIEW_HEIGHT)
+                    .last();
+        }
+
+    }
+
+    @Benchmark
+    public SizeMap add(SizeLists sizes) {
+        return fill(sizes.previewSizes);
+    }
+
+    @Benchmark
+    public AspectRatioIntersection.Result intersectRatios(Maps maps) {
+        return AspectRatioIntersection.compute(maps.preview, maps.picture, VIEW_WIDTH,
+                VIEW_HEIGHT);
+    }
+
+    /** What the backends pay on every size query after the first one. */
+    @Benchmark
+    public AspectRatioIntersection.Result intersectRatiosRepeated(Maps maps) {
+        return maps.intersection.intersect(maps.preview, maps.picture, VIEW_WIDTH, VIEW_HEIGHT);
+    }
+
+    @Benchmark
+    public void chooseOptimalPreviewSize(Maps maps, Blackhole blackhole) {
+        SortedSet<Size> candidates = maps.preview.sizes(maps.ratio);
+        int[] surfaces = SizeLists.SURFACES;
+        for (int i = 0; i < surfaces.length; i += 2) {
+            blackhole.consume(smallestAtLeast(candidates, surfaces[i], surfaces[i + 1]));
+        }
+    }
+
+    @Benchmark
+    public Size largestPictureSize(Maps maps) {
+        return maps.picture.sizes(maps.ratio).last();
+    }
+
+    private static SizeMap fill(Size[] sizes) {
+        SizeMap map = new SizeMap();
+        for (Size size : sizes) {
+            map.add(size);
+        }
+        return map;
+    }
+
+    /** The same walk as {@code Camera2.chooseOptimalSize()}. */
+    private static Size smallestAtLeast(SortedSet<Size> candidates, int longer, int shorter) {
+        for (Size size : candidates) {
+            if (size.getWidth() >= longer && size.getHeight() >= shorter) {
+                return size;
+            }
+        }
+        return candidates.last();
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.SurfaceTexture;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.Surface;
+import android.view.View;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the threads {@link Camera2} delivers its callbacks on.
+ */
+@RunWith(AndroidJUnit4.class)
+public class Camera2ThreadingTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private HandlerThread mCameraThread;
+
+    private Handler mCameraHandler;
+
+    private ThreadRecorder mRecorder;
+
+    private SurfacePreview mPreview;
+
+    private Camera2 mCamera2;
+
+    @Before
+    public void setUp() {
+        assumeTrue(Build.VERSION.SDK_INT >= 21);
+        Context context = InstrumentationRegistry.getTargetContext();
+        assumeTrue(context.checkCallingOrSelfPermission(Manifest.permission.CAMERA)
+                == PackageManager.PERMISSION_GRANTED);
+        mCameraThread = new HandlerThread("test_camera_thread");
+        mCameraThread.start();
+        mCameraHandler = new Handler(mCameraThread.getLooper());
+        mRecorder = new ThreadRecorder();
+        mPreview = new SurfacePreview(context);
+        mCamera2 = new Camera2(mRecorder, mPreview, context);
+        mCamera2.setCameraHandler(mCameraHandler);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (mCamera2 != null) {
+            runOnCameraThread(new Runnable() {
+                @Override
+                public void run() {
+                    mCamera2.stop();
+                }
+            });
+            mPreview.release();
+        }
+        if (mCameraThread != null) {
+            mCameraThread.quitSafely();
+        }
+    }
+
+    @Test
+    public void testCameraCallbacksRunOnCameraThread() throws InterruptedException {
+        startCamera();
+        assertThat(mRecorder.mOpenedThread, is(sameInstance((Thread) mCameraThread)));
+        assertThat(mRecorder.mPreviewStartedThread, is(sameInstance((Thread) mCameraThread)));
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                mCamera2.stop();
+            }
+        });
+        assertThat(mRecorder.mClosed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), is(true));
+        assertThat(mRecorder.mClosedThread, is(sameInstance((Thread) mCameraThread)));
+    }
+
+    @Test
+    public void testPictureIsProcessedOffCameraAndMainThreads() throws InterruptedException {
+        startCamera();
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                mCamera2.takePicture();
+            }
+        });
+        assertThat(mRecorder.mPictureTaken.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), is(true));
+        assertThat(mRecorder.mPictureThread, is(not(sameInstance((Thread) mCameraThread))));
+        assertThat(mRecorder.mPictureThread,
+                is(not(sameInstance(Looper.getMainLooper().getThread()))));
+    }
+
+    private void startCamera() throws InterruptedException {
+        final boolean[] started = new boolean[1];
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                started[0] = mCamera2.start();
+            }
+        });
+        // Legacy devices are left to Camera1
+        assumeTrue(started[0]);
+        assertThat(mRecorder.mPreviewStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), is(true));
+    }
+
+    private void runOnCameraThread(final Runnable task) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        mCameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                task.run();
+                done.countDown();
+            }
+        });
+        assertThat(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), is(true));
+    }
+
+    private static class ThreadRecorder implements CameraViewImpl.Callback {
+
+        final CountDownLatch mPreviewStarted = new CountDownLatch(1);
+
+        final CountDownLatch mClosed = new CountDownLatch(1);
+
+        final CountDownLatch mPictureTaken = new CountDownLatch(1);
+
+        volatile Thread mOpenedThread;
+
+        volatile Thread mPreviewStartedThread;
+
+        volatile Thread mClosedThread;
+
+        volatile Thread mPictureThread;
+
+        @Override
+        public void onCameraOpened() {
+            mOpenedThread = Thread.currentThread();
+        }
+
+        @Override
+        public void onPreviewStarted() {
+            mPreviewStartedThread = Thread.currentThread();
+            mPreviewStarted.countDown();
+        }
+
+        @Override
+        public void onCameraClosed() {
+            mClosedThread = Thread.currentThread();
+            mClosed.countDown();
+        }
+
+        @Override
+        public void onCameraFailed() {
+        }
+
+        @Override
+        public void onPictureTaken(CameraData cameraData) {
+            mPictureThread = Thread.currentThread();
+            mPictureTaken.countDown();
+        }
+
+    }
+
+    /**
+     * A preview into an offscreen {@link SurfaceTexture}.
+     */
+    private static class SurfacePreview extends PreviewImpl {
+
+        private final View mView;
+
+        private final SurfaceTexture mSurfaceTexture = new SurfaceTexture(0);
+
+        private final Surface mSurface = new Surface(mSurfaceTexture);
+
+        SurfacePreview(Context context) {
+            mView = new View(context);
+            setSize(640, 480);
+        }
+
+        void release() {
+            mSurface.release();
+            mSurfaceTexture.release();
+        }
+
+        @Override
+        Surface getSurface() {
+            return mSurface;
+        }
+
+        @Override
+        View getView() {
+            return mView;
+        }
+
+        @Override
+        Class getOutputClass() {
+            return SurfaceTexture.class;
+        }
+
+        @Override
+        void setDisplayOrientation(int displayOrientation) {
+        }
+
+        @Override
+        boolean isReady() {
+            return true;
+        }
+
+        @Override
+        void setTruePreviewSize(int width, int height) {
+            super.setTruePreviewSize(width, height);
+            mSurfaceTexture.setDefaultBufferSize(width, height);
+        }
+
+    }
+
+}
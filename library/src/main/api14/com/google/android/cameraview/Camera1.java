@@ -24,31 +24,27 @@ import android.annotation.TargetApi;
 import android.graphics.Matrix;
 import android.hardware.Camera;
 import android.os.Build;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.v4.util.SparseArrayCompat;
 import android.util.Log;
 import android.view.SurfaceHolder;
 
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executor;
 
 @SuppressWarnings("deprecation")
 class Camera1 extends CameraViewImpl {
 
     private static final String TAG = Camera1.class.getCanonicalName();
 
-    private static final int INVALID_CAMERA_ID = -1;
+    static final int INVALID_CAMERA_ID = -1;
+
+    /** How many pictures and focus scans may wait behind the one in progress. */
+    private static final int MAX_PENDING_CAPTURES = 3;
 
     private static final SparseArrayCompat<String> FLASH_MODES = new SparseArrayCompat<>();
-    private Size mPreviewSize;
-    private Size mCaptureSize;
 
     static {
         FLASH_MODES.put(Constants.FLASH_OFF, Camera.Parameters.FLASH_MODE_OFF);
@@ -58,29 +54,54 @@ class Camera1 extends CameraViewImpl {
         FLASH_MODES.put(Constants.FLASH_RED_EYE, Camera.Parameters.FLASH_MODE_RED_EYE);
     }
 
-    private int mCameraId;
+    private volatile int mCameraId;
 
-    private LinkedBlockingQueue<Runnable> mQueue = new LinkedBlockingQueue<>();
-    private ThreadPoolExecutor mPool;
+    /** Serializes focus scans and pictures; jobs run on the camera thread. */
+    private final CaptureScheduler mCaptureScheduler = new CaptureScheduler(new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            if (mCameraHandler != null) {
+                mCameraHandler.post(command);
+            } else {
+                command.run();
+            }
+        }
+    }, MAX_PENDING_CAPTURES);
 
-    private Camera mCamera;
+    private volatile Camera mCamera;
 
     private Camera.Parameters mCameraParameters;
 
-    private final Camera.CameraInfo mCameraInfo = new Camera.CameraInfo();
+    /** The resolution plans of the cameras opened so far, by camera ID. */
+    private final SparseArrayCompat<ResolutionPlan> mPlans = new SparseArrayCompat<>();
 
-    private boolean mAutoFocus;
+    /** The plan of the open camera. */
+    private ResolutionPlan mPlan;
+
+    private volatile boolean mAutoFocus;
+
+    /**
+     * Whether the camera is in a continuous focus mode, or {@link #mAutoFocus} while it is closed.
+     * Written on the camera thread, so that {@link #getAutoFocus()} never reads
+     * {@link #mCameraParameters} from another thread.
+     */
+    private volatile boolean mEffectiveAutoFocus;
 
     private Matrix rotateMatrix;
 
     @Facing
-    private int mFacing;
+    private volatile int mFacing;
 
-    private int mFlash;
+    /** The flash in effect, as {@link #getFlash()} reports it; written on the camera thread. */
+    private volatile int mFlash;
 
     private int mDisplayOrientation;
 
-    private int cameraEye = 0;
+    /** The value last passed to {@link Camera#setDisplayOrientation(int)}; -1 if none. */
+    private int mCameraDisplayOrientation = -1;
+
+    /** The surface generation of the preview the camera renders into; -1 if none. */
+    private int mPreviewSurfaceGeneration = -1;
 
     Camera1(Callback callback, PreviewImpl preview) {
         super(callback, preview);
@@ -88,22 +109,15 @@ class Camera1 extends CameraViewImpl {
             @Override
             public void onSurfaceChanged() {
                 if (mCamera != null) {
-                    setUpPreview();
+                    if (mPreview.getSurfaceGeneration() != mPreviewSurfaceGeneration) {
+                        setUpPreview();
+                    }
                     adjustCameraParameters();
                 }
             }
         });
     }
 
-    private ThreadPoolExecutor getThreadPool() {
-        if (mPool == null) {
-            mPool = new ThreadPoolExecutor(1, 1,
-                    60, TimeUnit.SECONDS, mQueue);
-        }
-
-        return (mPool);
-    }
-
     @Override
     boolean start() {
         chooseCamera();
@@ -113,6 +127,7 @@ class Camera1 extends CameraViewImpl {
                 setUpPreview();
             }
             mCamera.startPreview();
+            mCallback.onPreviewStarted();
             return true;
         } catch (Exception e) {
             e.printStackTrace();
@@ -122,6 +137,7 @@ class Camera1 extends CameraViewImpl {
 
     @Override
     void stop() {
+        cancelCaptures();
         if (mCamera != null) {
             mCamera.stopPreview();
             mCamera.cancelAutoFocus();
@@ -131,6 +147,7 @@ class Camera1 extends CameraViewImpl {
 
     @SuppressLint("NewApi")
     private void setUpPreview() {
+        mPreviewSurfaceGeneration = mPreview.getSurfaceGeneration();
         try {
             if (mPreview.getOutputClass() == SurfaceHolder.class) {
                 mCamera.setPreviewDisplay(mPreview.getSurfaceHolder());
@@ -155,8 +172,43 @@ class Camera1 extends CameraViewImpl {
         }
         mFacing = facing;
         if (isCameraOpened()) {
+            switchCamera();
+        }
+    }
+
+    /**
+     * Switches the open camera to {@link #mFacing}. The preview surface stays attached and the
+     * resolution plan of the new camera is reused if it has been opened before.
+     */
+    private void switchCamera() {
+        long startMillis = SystemClock.elapsedRealtime();
+        int cameraId = chooseCamera(mFacing);
+        if (cameraId == mCameraId) {
+            return;
+        }
+        if (cameraId == INVALID_CAMERA_ID) {
             stop();
             start();
+            return;
+        }
+        mMetrics.beginFirstFrame(startMillis);
+        // Pictures asked for the previous camera are not taken with the new one
+        cancelCaptures();
+        // Most devices cannot open a second camera; the current one has to go first
+        mCamera.stopPreview();
+        releaseCamera();
+        mCameraId = cameraId;
+        try {
+            openCamera();
+            if (mPreview.isReady()) {
+                setUpPreview();
+            }
+            mCamera.startPreview();
+            mCallback.onPreviewStarted();
+            mMetrics.recordFacingSwitch(SystemClock.elapsedRealtime() - startMillis);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to switch to camera " + cameraId, e);
+            releaseCamera();
         }
     }
 
@@ -190,11 +242,7 @@ class Camera1 extends CameraViewImpl {
 
     @Override
     boolean getAutoFocus() {
-        if (!isCameraOpened()) {
-            return mAutoFocus;
-        }
-        String focusMode = mCameraParameters.getFocusMode();
-        return focusMode != null && focusMode.contains("continuous");
+        return mEffectiveAutoFocus;
     }
 
     @Override
@@ -214,216 +262,403 @@ class Camera1 extends CameraViewImpl {
 
     @Override
     int toggleFlash() {
-        switch (mFlash) {
-            case Constants.FLASH_AUTO:
-                setFlash(Constants.FLASH_ON);
-                break;
-            case Constants.FLASH_OFF:
-                setFlash(Constants.FLASH_AUTO);
-                break;
-            case Constants.FLASH_ON:
-            default:
-                setFlash(Constants.FLASH_OFF);
-                break;
-        }
+        setFlash(nextFlash(mFlash));
         return mFlash;
     }
 
     @Override
     public void takePicture() {
         Log.d(TAG,
-                "take picture: cameraId=" + mCameraId + " displayOrientation=" + mDisplayOrientation
-                        + " cameraEye=" + cameraEye);
+                "take picture: cameraId=" + mCameraId + " displayOrientation=" + mDisplayOrientation);
         if (!isCameraOpened()) {
-            throw new IllegalStateException(
-                    "Camera is not ready. Call start() before takePicture().");
+            // Closed while the request was queued on the camera thread
+            Log.w(TAG, "takePicture: camera is not open");
+            return;
         }
-        if (getAutoFocus()) {
-            mCamera.cancelAutoFocus();
-            mCamera.autoFocus(new Camera.AutoFocusCallback() {
-                @Override
-                public void onAutoFocus(boolean success, Camera camera) {
-                    takePictureInternal();
-                }
-            });
-        } else {
-            takePictureInternal();
+        if (!mCaptureScheduler.submit(CaptureScheduler.PRIORITY_CAPTURE, new CaptureJob())) {
+            Log.w(TAG, "takePicture: too many pictures pending; dropped");
+        }
+    }
+
+    /**
+     * Drops the pictures and focus scans that have not been delivered yet.
+     */
+    private void cancelCaptures() {
+        int cancelled = mCaptureScheduler.cancelAll();
+        if (cancelled > 0) {
+            Log.w(TAG, "Cancelled " + cancelled + " pending captures");
+        }
+    }
+
+    /**
+     * Calls {@code timeout} if the auto-focus scan started now has not called back within
+     * {@link #mFocusTimeout}, as some devices never do.
+     */
+    private void postFocusTimeout(Runnable timeout) {
+        long maxMillis = mFocusTimeout.getMaxMillis();
+        if (mCameraHandler != null && maxMillis > 0) {
+            mCameraHandler.postDelayed(timeout, maxMillis);
+        }
+    }
+
+    private void removeFocusTimeout(Runnable timeout) {
+        if (mCameraHandler != null) {
+            mCameraHandler.removeCallbacks(timeout);
         }
     }
 
-    private void takePictureInternal() {
-        getThreadPool().execute(new Runnable() {
+    /**
+     * Focuses if auto-focus is on, then takes a picture and restarts the preview for the next.
+     */
+    private class CaptureJob implements CaptureScheduler.Job, Camera.AutoFocusCallback,
+            Camera.PictureCallback {
+
+        /** The rotation of the picture, as of the shutter. */
+        private int mRotation;
+
+        /**
+         * Whether the picture has been asked for, by the focus callback or the focus timeout;
+         * a callback arriving after the other must not ask again.
+         */
+        private boolean mShutterIssued;
+
+        private final Runnable mFocusTimedOut = new Runnable() {
             @Override
             public void run() {
+                if (!mCaptureScheduler.isRunning(CaptureJob.this)) {
+                    return;
+                }
+                Log.w(TAG, "Auto-focus did not call back in time; taking the picture anyway");
+                mMetrics.recordFocusTimeout();
                 try {
-                    mCamera.takePicture(null, null, null, new Camera.PictureCallback() {
-                        @Override
-                        public void onPictureTaken(byte[] data, Camera camera) {
-                            rotateMatrix = new Matrix();
-                            rotateMatrix.postRotate(cameraEye);
-                            camera.cancelAutoFocus();
-                            CameraData cameraData = new CameraData();
-                            cameraData.setJpegData(data);
-                            cameraData.setRotateMatrix(rotateMatrix);
-//                            cameraData.generateBitmap();
-                            mCallback.onPictureTaken(cameraData);
-                        }
-                    });
-                } catch (RuntimeException ex) {
-                    ex.printStackTrace();
-                    Log.e(TAG, "Take Picture Thrown Ex", ex);
+                    mCamera.cancelAutoFocus();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to cancel auto-focus", e);
                 }
+                takePicture(mCamera);
             }
-        });
+        };
+
+        @Override
+        public void run() {
+            if (!isCameraOpened()) {
+                mCaptureScheduler.finish(this);
+                return;
+            }
+            try {
+                if (getAutoFocus()) {
+                    mCamera.cancelAutoFocus();
+                    mCamera.autoFocus(this);
+                    postFocusTimeout(mFocusTimedOut);
+                } else {
+                    takePicture(mCamera);
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to focus", e);
+                mCaptureScheduler.finish(this);
+            }
+        }
+
+        @Override
+        public void onAutoFocus(boolean success, Camera camera) {
+            removeFocusTimeout(mFocusTimedOut);
+            if (!mCaptureScheduler.isRunning(this) || mCamera != camera) {
+                return;
+            }
+            takePicture(camera);
+        }
+
+        private void takePicture(Camera camera) {
+            if (mShutterIssued) {
+                return;
+            }
+            mShutterIssued = true;
+            mRotation = getCaptureRotation();
+            try {
+                camera.takePicture(null, null, null, this);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to take a picture", e);
+                mCaptureScheduler.finish(this);
+            }
+        }
+
+        @Override
+        public void onPictureTaken(byte[] data, Camera camera) {
+            if (!mCaptureScheduler.isRunning(this) || mCamera != camera) {
+                return;
+            }
+            rotateMatrix = new Matrix();
+            rotateMatrix.postRotate(mRotation);
+            CameraData cameraData = new CameraData();
+            cameraData.setJpegData(data);
+            cameraData.setRotateMatrix(rotateMatrix);
+            mCallback.onPictureTaken(cameraData);
+            try {
+                camera.cancelAutoFocus();
+                // takePicture() stops the preview; the next picture needs it running
+                camera.startPreview();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to restart the preview", e);
+            }
+            mCaptureScheduler.finish(this);
+        }
+
     }
 
     @Override
     void setDisplayOrientation(int displayOrientation) {
         mDisplayOrientation = displayOrientation;
-        adjustCameraParameters();
+        // Only the preview rotates; the capture rotation is worked out when a picture is taken
+        applyDisplayOrientation();
+    }
+
+    private void applyDisplayOrientation() {
+        if (mCamera == null) {
+            return;
+        }
+        int cameraDisplayOrientation = calculateCameraRotation(mDisplayOrientation);
+        if (cameraDisplayOrientation != mCameraDisplayOrientation) {
+            mCamera.setDisplayOrientation(cameraDisplayOrientation);
+            mCameraDisplayOrientation = cameraDisplayOrientation;
+        }
+    }
+
+    /**
+     * @return How much a picture taken now has to be rotated to show upright, in degrees.
+     */
+    private int getCaptureRotation() {
+        return calculateCameraRotation(mDisplayOrientation)
+                + (mFacing == FACING_FRONT ? 180 : 0);
+    }
+
+    @Override
+    int getSensorOrientation() {
+        if (!isCameraOpened()) {
+            return -1;
+        }
+        return CameraInfoRegistry.get().getOrientation(mCameraId);
     }
 
     @Override
-    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
     void setMeteringAndFocusAreas(@NonNull List<Camera.Area> meteringAndFocusAreas) {
+        if (!isCameraOpened()) {
+            return;
+        }
+        if (setMeteringAndFocusAreasInternal(meteringAndFocusAreas)) {
+            mCamera.setParameters(mCameraParameters);
+        }
+        focusOnAreas();
+    }
+
+    /**
+     * Stages all the changes in {@code edit} on {@link #mCameraParameters}, and commits those
+     * that differ from the current parameters with a single {@link Camera#setParameters}.
+     */
+    @Override
+    void apply(CameraSettingsEdit edit) {
+        if (!isCameraOpened()) {
+            // Remembered for when the camera opens
+            if (edit.hasAutoFocus()) {
+                setAutoFocusInternal(edit.getAutoFocus());
+            }
+            if (edit.hasFlash()) {
+                mFlash = edit.getFlash();
+            }
+            return;
+        }
+        boolean changed = false;
+        if (edit.hasAutoFocus()) {
+            changed |= setAutoFocusInternal(edit.getAutoFocus());
+        }
+        if (edit.hasFlash()) {
+            changed |= setFlashInternal(edit.getFlash());
+        }
+        List<Camera.Area> meteringAreas = edit.getMeteringAreas();
+        if (meteringAreas != null) {
+            changed |= setMeteringAndFocusAreasInternal(meteringAreas);
+        }
+        if (changed) {
+            mCamera.setParameters(mCameraParameters);
+        }
+        if (meteringAreas != null) {
+            focusOnAreas();
+        }
+    }
+
+    /**
+     * Sets as many of the areas as the camera supports; the rest are ignored.
+     *
+     * @return Whether {@link #mCameraParameters} changed.
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private boolean setMeteringAndFocusAreasInternal(List<Camera.Area> meteringAndFocusAreas) {
+        if (meteringAndFocusAreas.isEmpty()) {
+            return false;
+        }
+        boolean changed = false;
         if (mCameraParameters.getSupportedFocusModes().contains(
                 Camera.Parameters.FOCUS_MODE_MACRO)) {
-            mCameraParameters.setFocusMode(Camera.Parameters.FOCUS_MODE_MACRO);
+            changed |= setFocusMode(Camera.Parameters.FOCUS_MODE_MACRO);
         }
-        if (meteringAndFocusAreas.size() > 1) {
-            throw new RuntimeException("Multiple focus areas are not Supported");
+        List<Camera.Area> focusAreas = limit(meteringAndFocusAreas,
+                mCameraParameters.getMaxNumFocusAreas());
+        if (!focusAreas.isEmpty() && !focusAreas.equals(mCameraParameters.getFocusAreas())) {
+            mCameraParameters.setFocusAreas(focusAreas);
+            changed = true;
         }
-        if (mCameraParameters.getMaxNumFocusAreas() > 0) {
-            mCameraParameters.setFocusAreas(meteringAndFocusAreas);
+        List<Camera.Area> meteringAreas = limit(meteringAndFocusAreas,
+                mCameraParameters.getMaxNumMeteringAreas());
+        if (!meteringAreas.isEmpty()
+                && !meteringAreas.equals(mCameraParameters.getMeteringAreas())) {
+            mCameraParameters.setMeteringAreas(meteringAreas);
+            changed = true;
         }
+        return changed;
+    }
+
+    private static List<Camera.Area> limit(List<Camera.Area> areas, int max) {
+        return areas.size() <= max ? areas : areas.subList(0, Math.max(max, 0));
+    }
 
-        if (mCameraParameters.getMaxNumMeteringAreas() > 0) {
-            mCameraParameters.setMeteringAreas(meteringAndFocusAreas);
+    /**
+     * Runs a focus scan on the areas set, ahead of any picture waiting, then goes back to the
+     * auto-focus mode.
+     */
+    private void focusOnAreas() {
+        if (!mCaptureScheduler.submit(CaptureScheduler.PRIORITY_FOCUS, new FocusJob())) {
+            Log.w(TAG, "focusOnAreas: too many captures pending; dropped");
         }
-        mCamera.setParameters(mCameraParameters);
-        mCamera.autoFocus(new Camera.AutoFocusCallback() {
-            @Override
-            public void onAutoFocus(boolean success, Camera camera) {
-                mCamera.cancelAutoFocus();
-                setAutoFocusInternal(mAutoFocus);
-            }
-        });
     }
 
-    @Override
-    Size getCaptureResolution() {
-        if (mCameraParameters != null) {
-            TreeSet<Size> sizes = new TreeSet<>();
-            for (Camera.Size size : mCameraParameters.getSupportedPictureSizes()) {
-                sizes.add(new Size(size.width, size.height));
-            }
+    private class FocusJob implements CaptureScheduler.Job, Camera.AutoFocusCallback {
 
-            TreeSet<AspectRatio> aspectRatios = findCommonAspectRatios(
-                    mCameraParameters.getSupportedPreviewSizes(),
-                    mCameraParameters.getSupportedPictureSizes()
-            );
-            AspectRatio targetRatio = aspectRatios.size() > 0 ? aspectRatios.last() : null;
-
-            Iterator<Size> descendingSizes = sizes.descendingIterator();
-            Size size;
-            while (descendingSizes.hasNext() && mCaptureSize == null) {
-                size = descendingSizes.next();
-                if (targetRatio == null || targetRatio.matches(size)) {
-                    mCaptureSize = size;
-                    break;
+        private final Runnable mFocusTimedOut = new Runnable() {
+            @Override
+            public void run() {
+                if (!mCaptureScheduler.isRunning(FocusJob.this)) {
+                    return;
                 }
+                Log.w(TAG, "Auto-focus did not call back in time; giving up on the areas");
+                mMetrics.recordFocusTimeout();
+                onAutoFocus(false, mCamera);
             }
-        }
+        };
 
-        return mCaptureSize;
-    }
-
-    @Override
-    Size getPreviewResolution() {
-        if (mCameraParameters != null) {
-            TreeSet<Size> sizes = new TreeSet<>();
-            for (Camera.Size size : mCameraParameters.getSupportedPreviewSizes()) {
-                sizes.add(new Size(size.width, size.height));
+        @Override
+        public void run() {
+            if (!isCameraOpened()) {
+                mCaptureScheduler.finish(this);
+                return;
             }
+            try {
+                mCamera.autoFocus(this);
+                postFocusTimeout(mFocusTimedOut);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to focus", e);
+                mCaptureScheduler.finish(this);
+            }
+        }
 
-            TreeSet<AspectRatio> aspectRatios = findCommonAspectRatios(
-                    mCameraParameters.getSupportedPreviewSizes(),
-                    mCameraParameters.getSupportedPictureSizes()
-            );
-            AspectRatio targetRatio = aspectRatios.size() > 0 ? aspectRatios.last() : null;
-
-            Iterator<Size> descendingSizes = sizes.descendingIterator();
-            Size size;
-            while (descendingSizes.hasNext() && mPreviewSize == null) {
-                size = descendingSizes.next();
-                if (targetRatio == null || targetRatio.matches(size)) {
-                    mPreviewSize = size;
-                    break;
+        @Override
+        public void onAutoFocus(boolean success, Camera camera) {
+            removeFocusTimeout(mFocusTimedOut);
+            if (!mCaptureScheduler.isRunning(this) || mCamera != camera) {
+                return;
+            }
+            try {
+                camera.cancelAutoFocus();
+                if (setAutoFocusInternal(mAutoFocus)) {
+                    camera.setParameters(mCameraParameters);
                 }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to restore the focus mode", e);
             }
+            mCaptureScheduler.finish(this);
         }
 
-        return mPreviewSize;
     }
 
-    private TreeSet<AspectRatio> findCommonAspectRatios(List<Camera.Size> previewSizes,
-            List<Camera.Size> captureSizes) {
-        Set<AspectRatio> previewAspectRatios = new HashSet<>();
-        for (Camera.Size size : previewSizes) {
-            if (size.width >= CameraView.Internal.screenHeight
-                    && size.height >= CameraView.Internal.screenWidth) {
-                previewAspectRatios.add(AspectRatio.of(size.width, size.height));
-            }
+    @Override
+    Size getCaptureResolution() {
+        if (mCameraParameters == null) {
+            return null;
         }
+        // Camera1 hands over a single JPEG buffer per picture
+        return mPlan.getCaptureSize(mCaptureMemoryBudget, 1,
+                CameraView.Internal.screenWidth, CameraView.Internal.screenHeight);
+    }
 
-        Set<AspectRatio> captureAspectRatios = new HashSet<>();
-        for (Camera.Size size : captureSizes) {
-            captureAspectRatios.add(AspectRatio.of(size.width, size.height));
+    @Override
+    Size getPreviewResolution() {
+        if (mCameraParameters == null) {
+            return null;
         }
+        return mPlan.getPreviewSize(
+                CameraView.Internal.screenWidth, CameraView.Internal.screenHeight);
+    }
 
-        TreeSet<AspectRatio> output = new TreeSet<>();
-        for (AspectRatio aspectRatio : previewAspectRatios) {
-            if (captureAspectRatios.contains(aspectRatio)) {
-                output.add(aspectRatio);
+    /**
+     * <p>Collects the supported sizes from {@link #mCameraParameters}, unless they have been
+     * collected for {@link #mCameraId} before.</p>
+     * <p>This rewrites {@link #mPlan}.</p>
+     */
+    private void collectCameraInfo() {
+        ResolutionPlan plan = mPlans.get(mCameraId);
+        if (plan == null) {
+            plan = new ResolutionPlan();
+            for (Camera.Size size : mCameraParameters.getSupportedPreviewSizes()) {
+                plan.getPreviewSizes().add(new Size(size.width, size.height));
+            }
+            for (Camera.Size size : mCameraParameters.getSupportedPictureSizes()) {
+                plan.getPictureSizes().add(new Size(size.width, size.height));
             }
+            mPlans.put(mCameraId, plan);
         }
-
-        return output;
+        // Let the session pick its capture size against the budget in effect now
+        plan.invalidateCaptureSize();
+        mPlan = plan;
     }
 
-
     /**
-     * This rewrites {@link #mCameraId} and {@link #mCameraInfo}.
+     * This rewrites {@link #mCameraId}.
      */
     private void chooseCamera() {
-        for (int i = 0, count = Camera.getNumberOfCameras(); i < count; i++) {
-            Camera.getCameraInfo(i, mCameraInfo);
-            if (mCameraInfo.facing == mFacing) {
-                mCameraId = i;
-                return;
-            }
-        }
-        mCameraId = INVALID_CAMERA_ID;
+        mCameraId = chooseCamera(mFacing);
+    }
+
+    /**
+     * @param facing The facing to look for.
+     * @return The ID of the first camera with {@code facing}, or {@link #INVALID_CAMERA_ID}.
+     */
+    static int chooseCamera(@Facing int facing) {
+        return CameraInfoRegistry.get().findCamera(facing);
     }
 
     private void openCamera() {
         if (mCamera != null) {
             releaseCamera();
         }
-        mCamera = Camera.open(mCameraId);
-        mCameraParameters = mCamera.getParameters();
+        CameraPrewarm.Device prewarmed = CameraPrewarm.take(mCameraId);
+        if (prewarmed != null) {
+            mCamera = prewarmed.camera;
+            CameraPrewarm.onCameraOpened();
+            mCameraParameters = prewarmed.parameters;
+        } else {
+            mCamera = Camera.open(mCameraId);
+            // Counted as soon as it is held, as releaseCamera() uncounts it
+            CameraPrewarm.onCameraOpened();
+            mCameraParameters = mCamera.getParameters();
+        }
+        collectCameraInfo();
 
         adjustCameraParameters();
-        mCamera.setDisplayOrientation(calculateCameraRotation(mDisplayOrientation));
+        applyDisplayOrientation();
         mCallback.onCameraOpened();
 
     }
 
     private void adjustCameraParameters() {
         if (mCamera == null || mCameraParameters == null) return;
-        cameraEye = calculateCameraRotation(mDisplayOrientation) + (mFacing == FACING_FRONT
-                ? 180 : 0);
-
         mPreview.setTruePreviewSize(
                 getPreviewResolution().getWidth(),
                 getPreviewResolution().getHeight()
@@ -439,70 +674,93 @@ class Camera1 extends CameraViewImpl {
                 getCaptureResolution().getHeight()
         );
 
-        setFlash(mFlash);
+        // Restored along with the sizes, in the same setParameters
+        setAutoFocusInternal(mAutoFocus);
+        setFlashInternal(mFlash);
         Log.d(TAG, "adjustCameraParams preview[" + getPreviewResolution().getWidth() + ", "
                 + getPreviewResolution().getHeight() + "]");
         mCamera.setParameters(mCameraParameters);
-        mCamera.setDisplayOrientation(calculateCameraRotation(mDisplayOrientation));
-
     }
 
     private void releaseCamera() {
         if (mCamera != null) {
             mCamera.release();
+            CameraPrewarm.onCameraReleased();
             mCamera = null;
             mCameraParameters = null;
-            mPreviewSize = null;
-            mCaptureSize = null;
+            mEffectiveAutoFocus = mAutoFocus;
+            mPreviewSurfaceGeneration = -1;
+            mCameraDisplayOrientation = -1;
             mCallback.onCameraClosed();
         }
     }
 
     private int calculateCameraRotation(int rotation) {
-        if (mCameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-            return (360 - (mCameraInfo.orientation + rotation) % 360) % 360;
-        } else {
-            return (mCameraInfo.orientation - rotation + 360) % 360;
-        }
+        return CameraInfoRegistry.get().getDisplayOrientationForDegrees(mCameraId, rotation);
     }
 
+    /**
+     * @return Whether {@link #mCameraParameters} changed.
+     */
     private boolean setAutoFocusInternal(boolean autoFocus) {
         mAutoFocus = autoFocus;
         if (isCameraOpened()) {
-            final List<String> modes = mCameraParameters.getSupportedFocusModes();
-            if (autoFocus && modes.contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE)) {
-                mCameraParameters.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
-            } else if (autoFocus && modes.contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO)) {
-                mCameraParameters.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO);
-            } else if (autoFocus && modes.contains(Camera.Parameters.FOCUS_MODE_AUTO)) {
-                mCameraParameters.setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
-            } else if (modes.contains(Camera.Parameters.FOCUS_MODE_FIXED)) {
-                mCameraParameters.setFocusMode(Camera.Parameters.FOCUS_MODE_FIXED);
-            } else if (modes.contains(Camera.Parameters.FOCUS_MODE_INFINITY)) {
-                mCameraParameters.setFocusMode(Camera.Parameters.FOCUS_MODE_INFINITY);
-            } else {
-                mCameraParameters.setFocusMode(modes.get(0));
-            }
-            return true;
+            boolean changed = setFocusModeFor(autoFocus);
+            String focusMode = mCameraParameters.getFocusMode();
+            mEffectiveAutoFocus = focusMode != null && focusMode.contains("continuous");
+            return changed;
         } else {
+            mEffectiveAutoFocus = autoFocus;
             return false;
         }
     }
 
+    /**
+     * @return Whether {@link #mCameraParameters} changed.
+     */
+    private boolean setFocusModeFor(boolean autoFocus) {
+        final List<String> modes = mCameraParameters.getSupportedFocusModes();
+        if (autoFocus && modes.contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE)) {
+            return setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
+        } else if (autoFocus && modes.contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO)) {
+            return setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO);
+        } else if (autoFocus && modes.contains(Camera.Parameters.FOCUS_MODE_AUTO)) {
+            return setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
+        } else if (modes.contains(Camera.Parameters.FOCUS_MODE_FIXED)) {
+            return setFocusMode(Camera.Parameters.FOCUS_MODE_FIXED);
+        } else if (modes.contains(Camera.Parameters.FOCUS_MODE_INFINITY)) {
+            return setFocusMode(Camera.Parameters.FOCUS_MODE_INFINITY);
+        } else {
+            return setFocusMode(modes.get(0));
+        }
+    }
+
+    /**
+     * @return Whether {@link #mCameraParameters} changed.
+     */
+    private boolean setFocusMode(String focusMode) {
+        if (focusMode.equals(mCameraParameters.getFocusMode())) {
+            return false;
+        }
+        mCameraParameters.setFocusMode(focusMode);
+        return true;
+    }
+
+    /**
+     * @return Whether {@link #mCameraParameters} changed.
+     */
     private boolean setFlashInternal(int flash) {
         if (isCameraOpened()) {
             List<String> modes = mCameraParameters.getSupportedFlashModes();
             String mode = FLASH_MODES.get(flash);
             if (modes != null && modes.contains(mode)) {
-                mCameraParameters.setFlashMode(mode);
                 mFlash = flash;
-                return true;
+                return setFlashMode(mode);
             }
             String currentMode = FLASH_MODES.get(mFlash);
             if (modes == null || !modes.contains(currentMode)) {
-                mCameraParameters.setFlashMode(Camera.Parameters.FLASH_MODE_OFF);
                 mFlash = Constants.FLASH_OFF;
-                return true;
+                return setFlashMode(Camera.Parameters.FLASH_MODE_OFF);
             }
             return false;
         } else {
@@ -511,11 +769,20 @@ class Camera1 extends CameraViewImpl {
         }
     }
 
+    /**
+     * @return Whether {@link #mCameraParameters} changed.
+     */
+    private boolean setFlashMode(String flashMode) {
+        if (flashMode.equals(mCameraParameters.getFlashMode())) {
+            return false;
+        }
+        mCameraParameters.setFlashMode(flashMode);
+        return true;
+    }
+
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
     private void disableShutterSound() {
-        Camera.CameraInfo info = new Camera.CameraInfo();
-        Camera.getCameraInfo(mCameraId, info);
-        if (info.canDisableShutterSound && mCamera != null) {
+        if (CameraInfoRegistry.get().canDisableShutterSound(mCameraId) && mCamera != null) {
             mCamera.enableShutterSound(false);
         }
     }
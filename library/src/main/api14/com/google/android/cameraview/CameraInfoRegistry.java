@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.annotation.TargetApi;
+import android.hardware.Camera;
+import android.os.Build;
+import android.view.Surface;
+
+/**
+ * Process-wide cache of {@link Camera.CameraInfo} for every camera.
+ *
+ * <p>The cameras are queried once, on first access. Along with the facing, the sensor
+ * orientation and whether the shutter sound can be disabled, the display orientation is
+ * precomputed for every camera and display rotation, so that orientation changes and captures
+ * do not need to query the camera service.</p>
+ */
+@SuppressWarnings("deprecation")
+class CameraInfoRegistry {
+
+    /** The four display rotations, {@link Surface#ROTATION_0} to {@link Surface#ROTATION_270}. */
+    private static final int ROTATIONS = 4;
+
+    private static volatile CameraInfoRegistry sInstance;
+
+    private final int[] mFacings;
+
+    private final int[] mOrientations;
+
+    private final boolean[] mCanDisableShutterSound;
+
+    /** The display orientation indexed by {@code cameraId * ROTATIONS + rotation}. */
+    private final int[] mDisplayOrientations;
+
+    static CameraInfoRegistry get() {
+        CameraInfoRegistry registry = sInstance;
+        if (registry == null) {
+            synchronized (CameraInfoRegistry.class) {
+                registry = sInstance;
+                if (registry == null) {
+                    registry = new CameraInfoRegistry();
+                    sInstance = registry;
+                }
+            }
+        }
+        return registry;
+    }
+
+    private CameraInfoRegistry() {
+        int count = Camera.getNumberOfCameras();
+        mFacings = new int[count];
+        mOrientations = new int[count];
+        mCanDisableShutterSound = new boolean[count];
+        mDisplayOrientations = new int[count * ROTATIONS];
+        Camera.CameraInfo info = new Camera.CameraInfo();
+        for (int i = 0; i < count; i++) {
+            Camera.getCameraInfo(i, info);
+            mFacings[i] = info.facing;
+            mOrientations[i] = info.orientation;
+            mCanDisableShutterSound[i] = canDisableShutterSound(info);
+            for (int rotation = 0; rotation < ROTATIONS; rotation++) {
+                mDisplayOrientations[i * ROTATIONS + rotation] =
+                        calculateDisplayOrientation(info.facing, info.orientation, rotation * 90);
+            }
+        }
+    }
+
+    int getNumberOfCameras() {
+        return mFacings.length;
+    }
+
+    /**
+     * @return The ID of the first camera with {@code facing}, or
+     * {@link Camera1#INVALID_CAMERA_ID}.
+     */
+    int findCamera(@Facing int facing) {
+        for (int i = 0; i < mFacings.length; i++) {
+            if (mFacings[i] == facing) {
+                return i;
+            }
+        }
+        return Camera1.INVALID_CAMERA_ID;
+    }
+
+    int getFacing(int cameraId) {
+        return mFacings[cameraId];
+    }
+
+    int getOrientation(int cameraId) {
+        return mOrientations[cameraId];
+    }
+
+    boolean canDisableShutterSound(int cameraId) {
+        return mCanDisableShutterSound[cameraId];
+    }
+
+    /**
+     * @param rotation One of the {@code Surface.ROTATION_*} values.
+     * @return The value for {@link Camera#setDisplayOrientation(int)}.
+     */
+    int getDisplayOrientation(int cameraId, int rotation) {
+        return mDisplayOrientations[cameraId * ROTATIONS + rotation];
+    }
+
+    /**
+     * @param degrees The display orientation in degrees, as reported by
+     *                {@link DisplayOrientationDetector}.
+     * @return The value for {@link Camera#setDisplayOrientation(int)}.
+     */
+    int getDisplayOrientationForDegrees(int cameraId, int degrees) {
+        if (degrees % 90 != 0 || degrees < 0 || degrees >= 360) {
+            return calculateDisplayOrientation(mFacings[cameraId], mOrientations[cameraId],
+                    degrees);
+        }
+        return getDisplayOrientation(cameraId, degrees / 90);
+    }
+
+    /**
+     * Rotates the preview of a camera so that it shows upright; front cameras are mirrored.
+     */
+    static int calculateDisplayOrientation(int facing, int orientation, int degrees) {
+        if (facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
+            return (360 - (orientation + degrees) % 360) % 360;
+        } else {
+            return (orientation - degrees + 360) % 360;
+        }
+    }
+
+    private static boolean canDisableShutterSound(Camera.CameraInfo info) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+                && canDisableShutterSoundApi17(info);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private static boolean canDisableShutterSoundApi17(Camera.CameraInfo info) {
+        return info.canDisableShutterSound;
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.hardware.Camera;
+import android.os.Handler;
+import android.util.Log;
+
+/**
+ * Opens a camera ahead of the first {@link CameraView#start()} and hands it over to the first
+ * {@link Camera1} that opens the same camera. A device nobody takes is released after a timeout.
+ *
+ * <p>Everything here runs on the camera thread, which is also where the device is opened.</p>
+ */
+@SuppressWarnings("deprecation")
+class CameraPrewarm {
+
+    private static final String TAG = "CameraPrewarm";
+
+    /**
+     * A camera device opened ahead of time, with its parameters already read.
+     */
+    static class Device {
+
+        final int cameraId;
+
+        final Camera camera;
+
+        final Camera.Parameters parameters;
+
+        Device(int cameraId, Camera camera, Camera.Parameters parameters) {
+            this.cameraId = cameraId;
+            this.camera = camera;
+            this.parameters = parameters;
+        }
+
+    }
+
+    private static Device sDevice;
+
+    private static Handler sHandler;
+
+    /** The number of cameras held open by {@link Camera1} instances. */
+    private static int sOpenCount;
+
+    private static final Runnable RELEASE = new Runnable() {
+        @Override
+        public void run() {
+            release();
+        }
+    };
+
+    private CameraPrewarm() {
+    }
+
+    /**
+     * Looks up the camera with {@code facing} and, if {@code open}, opens it. Nothing is opened
+     * while a {@link Camera1} holds a camera, so as not to take the device away from it.
+     *
+     * @param handler       The handler of the camera thread, used for the timeout.
+     * @param facing        The facing of the camera to prewarm.
+     * @param open          Whether the device may be opened; requires the camera permission.
+     * @param timeoutMillis How long to hold an opened device for a {@link CameraView} to take.
+     */
+    static void prewarm(Handler handler, @Facing int facing, boolean open, long timeoutMillis) {
+        int cameraId = Camera1.chooseCamera(facing);
+        if (sDevice != null && sDevice.cameraId == cameraId) {
+            // Already warm; just hold it a little longer
+            sHandler.removeCallbacks(RELEASE);
+            sHandler.postDelayed(RELEASE, timeoutMillis);
+            return;
+        }
+        release();
+        if (cameraId == Camera1.INVALID_CAMERA_ID || !open || sOpenCount > 0) {
+            return;
+        }
+        Camera camera = null;
+        try {
+            camera = Camera.open(cameraId);
+            sDevice = new Device(cameraId, camera, camera.getParameters());
+            sHandler = handler;
+            sHandler.postDelayed(RELEASE, timeoutMillis);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to prewarm camera " + cameraId, e);
+            if (camera != null) {
+                camera.release();
+            }
+        }
+    }
+
+    /**
+     * Takes over the prewarmed device if it is {@code cameraId}. Any other prewarmed device is
+     * released, as most devices cannot keep two cameras open.
+     *
+     * @return The device, now owned by the caller, or {@code null}.
+     */
+    static Device take(int cameraId) {
+        if (sDevice == null) {
+            return null;
+        }
+        if (sDevice.cameraId != cameraId) {
+            release();
+            return null;
+        }
+        Device device = sDevice;
+        sDevice = null;
+        sHandler.removeCallbacks(RELEASE);
+        return device;
+    }
+
+    /**
+     * Called by {@link Camera1} once it has opened a camera, whether prewarmed or not.
+     */
+    static void onCameraOpened() {
+        sOpenCount++;
+    }
+
+    /**
+     * Called by {@link Camera1} once it has released the camera it opened.
+     */
+    static void onCameraReleased() {
+        sOpenCount--;
+    }
+
+    static void release() {
+        if (sDevice != null) {
+            sDevice.camera.release();
+            sDevice = null;
+            sHandler.removeCallbacks(RELEASE);
+        }
+    }
+
+}
@@ -14,8 +14,18 @@ class TextureViewPreview extends PreviewImpl {
 
     private final TextureView mTextureView;
 
+    /** The surface handed out for {@link #mSurfaceTexture}; guarded by this. */
+    private Surface mSurface;
+
+    private SurfaceTexture mSurfaceTexture;
+
     private int mDisplayOrientation;
 
+    private final PreviewGeometry mGeometry = new PreviewGeometry();
+
+    /** Holds the transform of {@link #mGeometry}; copied by {@link TextureView#setTransform}. */
+    private final Matrix mTransform = new Matrix();
+
     TextureViewPreview(Context context, ViewGroup parent) {
         final View view = View.inflate(context, R.layout.texture_view, parent);
         mTextureView = (TextureView) view.findViewById(R.id.texture_view);
@@ -23,6 +33,7 @@ class TextureViewPreview extends PreviewImpl {
 
             @Override
             public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
+                nextSurfaceGeneration();
                 setSize(width, height);
                 configureTransform();
                 dispatchSurfaceChanged();
@@ -38,12 +49,15 @@ class TextureViewPreview extends PreviewImpl {
 
             @Override
             public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
+                releaseSurface();
+                nextSurfaceGeneration();
                 setSize(0, 0);
                 return true;
             }
 
             @Override
             public void onSurfaceTextureUpdated(SurfaceTexture surface) {
+                dispatchFrameAvailable();
             }
         });
     }
@@ -54,8 +68,24 @@ class TextureViewPreview extends PreviewImpl {
     }
 
     @Override
-    Surface getSurface() {
-        return new Surface(mTextureView.getSurfaceTexture());
+    synchronized Surface getSurface() {
+        SurfaceTexture surfaceTexture = mTextureView.getSurfaceTexture();
+        if (surfaceTexture != mSurfaceTexture) {
+            releaseSurface();
+            if (surfaceTexture != null) {
+                mSurface = new Surface(surfaceTexture);
+                mSurfaceTexture = surfaceTexture;
+            }
+        }
+        return mSurface;
+    }
+
+    private synchronized void releaseSurface() {
+        if (mSurface != null) {
+            mSurface.release();
+            mSurface = null;
+            mSurfaceTexture = null;
+        }
     }
 
     @Override
@@ -98,37 +128,23 @@ class TextureViewPreview extends PreviewImpl {
         }
     }
 
-    void configureTransform() {
-        Matrix matrix = new Matrix();
-        if (mDisplayOrientation % 180 == 90) {
-            final int width = getWidth();
-            final int height = getHeight();
-            // Rotate the camera preview when the screen is landscape.
-            matrix.setPolyToPoly(
-                    new float[]{
-                            0.f, 0.f, // top left
-                            width, 0.f, // top right
-                            0.f, height, // bottom left
-                            width, height, // bottom right
-                    }, 0,
-                    mDisplayOrientation == 90 ?
-                            // Clockwise
-                            new float[]{
-                                    0.f, height, // top left
-                                    0.f, 0.f, // top right
-                                    width, height, // bottom left
-                                    width, 0.f, // bottom right
-                            } : // mDisplayOrientation == 270
-                            // Counter-clockwise
-                            new float[]{
-                                    width, 0.f, // top left
-                                    width, height, // top right
-                                    0.f, 0.f, // bottom left
-                                    0.f, height, // bottom right
-                            }, 0,
-                    4);
+    @Override
+    protected void configureTransform() {
+        if (mGeometry.update(getWidth(), getHeight(), mTrueWidth, mTrueHeight,
+                mDisplayOrientation)) {
+            mTransform.setValues(mGeometry.getValues());
+            mTextureView.setTransform(mTransform);
         }
-        mTextureView.setTransform(matrix);
+    }
+
+    @Override
+    float getContentScaleX() {
+        return mGeometry.getScaleX();
+    }
+
+    @Override
+    float getContentScaleY() {
+        return mGeometry.getScaleY();
     }
 
 }
@@ -22,33 +22,41 @@ import static com.google.android.cameraview.Constants.FACING_FRONT;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.ImageFormat;
+import android.graphics.Rect;
 import android.hardware.Camera;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.CaptureResult;
 import android.hardware.camera2.TotalCaptureResult;
-import android.hardware.camera2.params.StreamConfigurationMap;
+import android.hardware.camera2.params.MeteringRectangle;
 import android.media.Image;
 import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.support.v4.util.ArrayMap;
 import android.util.Log;
 import android.util.SparseIntArray;
 import android.view.Surface;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 import java.util.SortedSet;
-import java.util.TreeSet;
 
+/**
+ * The camera2 backend.
+ *
+ * <p>The device, session and capture callbacks run on the camera thread given to
+ * {@link #setCameraHandler(Handler)}. Captured JPEGs are copied and decoded on an image thread
+ * owned by this backend, which runs from {@link #start()} to {@link #stop()}.</p>
+ */
 @TargetApi(21)
 class Camera2 extends CameraViewImpl {
 
@@ -56,8 +64,24 @@ class Camera2 extends CameraViewImpl {
 
     private static final SparseIntArray INTERNAL_FACINGS = new SparseIntArray();
 
-    private Size mCaptureSize;
-    private Size mPreviewSize;
+    /** The number of JPEG buffers the {@link ImageReader} holds when the memory budget allows. */
+    private static final int MAX_IMAGES = 2;
+
+    /** How many preview frames of 3A states are kept for deciding to skip the focus lock. */
+    private static final int CONTROL_STATE_HISTORY = 8;
+
+    /** How old the last 3A states may be for a capture to skip the focus lock. */
+    private static final long CONTROL_STATE_MAX_AGE_MILLIS = 200;
+
+    /** How long focus stays on tapped areas before continuous auto-focus takes over again. */
+    private static final long AREA_FOCUS_HOLD_MILLIS = 3000;
+
+    /**
+     * The tag of the repeating request, telling its frames apart from those of one-off captures
+     * sharing {@link #mCaptureCallback}.
+     */
+    private static final Object REPEATING_REQUEST_TAG = new Object();
+
 
     static {
         INTERNAL_FACINGS.put(FACING_BACK, CameraCharacteristics.LENS_FACING_BACK);
@@ -66,11 +90,32 @@ class Camera2 extends CameraViewImpl {
 
     private final CameraManager mCameraManager;
 
+    private final CameraRegistry mCameraRegistry;
+
     private final CameraDevice.StateCallback mCameraDeviceCallback
             = new CameraDevice.StateCallback() {
 
         @Override
         public void onOpened(@NonNull CameraDevice camera) {
+            if (camera.getId().equals(mOpeningCameraId)) {
+                mOpeningCameraId = null;
+            }
+            if (!mOpenRequested || !camera.getId().equals(mPendingCameraId)) {
+                // stop() was called, or the facing changed again, while the camera was opening
+                camera.close();
+                return;
+            }
+            if (mSwitchStartMillis != 0) {
+                // The new camera is ready; the previous one can go now
+                closeCamera();
+            }
+            // From now on everything refers to the camera that has opened
+            promotePendingCamera();
+            if (mImageReader == null) {
+                prepareImageReader();
+            }
+            // Whatever the last session was configured with belongs to the previous device
+            mSessionPreviewSize = null;
             mCamera = camera;
             mCallback.onCameraOpened();
             startCaptureSession();
@@ -78,18 +123,52 @@ class Camera2 extends CameraViewImpl {
 
         @Override
         public void onClosed(@NonNull CameraDevice camera) {
-            mCallback.onCameraClosed();
+            // A camera closed for a facing switch is replaced rather than closed
+            if (mCamera == null) {
+                mCallback.onCameraClosed();
+            }
         }
 
         @Override
         public void onDisconnected(@NonNull CameraDevice camera) {
-            mCamera = null;
+            if (camera.getId().equals(mOpeningCameraId)) {
+                mOpeningCameraId = null;
+            }
+            if (isLost(camera)) {
+                onCameraLost(camera);
+            } else {
+                camera.close();
+            }
         }
 
         @Override
         public void onError(@NonNull CameraDevice camera, int error) {
             Log.e(TAG, "onError: " + camera.getId() + " (" + error + ")");
-            mCamera = null;
+            if (camera.getId().equals(mOpeningCameraId)) {
+                mOpeningCameraId = null;
+            }
+            if (isLost(camera)) {
+                onCameraLost(camera);
+            } else if (mCamera != null && mSwitchStartMillis != 0
+                    && (error == ERROR_MAX_CAMERAS_IN_USE || error == ERROR_CAMERA_IN_USE)) {
+                // The hardware cannot run both cameras; close the current one and try again
+                camera.close();
+                closeCamera();
+                startOpeningCamera();
+            } else {
+                // A stale open, or the camera of a switch; the open camera keeps running
+                camera.close();
+                mSwitchStartMillis = 0;
+            }
+        }
+
+        /**
+         * @return Whether {@code camera} is the open camera, or the one being opened while no
+         * other is open.
+         */
+        private boolean isLost(CameraDevice camera) {
+            return mCamera == camera || (mCamera == null && mOpenRequested
+                    && camera.getId().equals(mPendingCameraId));
         }
 
     };
@@ -99,25 +178,30 @@ class Camera2 extends CameraViewImpl {
 
         @Override
         public void onConfigured(@NonNull CameraCaptureSession session) {
-            if (mCamera == null) {
+            if (mCamera == null || session.getDevice() != mCamera) {
                 return;
             }
             mCaptureSession = session;
             updateAutoFocus();
             updateFlash();
-            try {
-                mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(),
-                        mCaptureCallback, null);
-            } catch (CameraAccessException e) {
-                Log.e(TAG, "Failed to start camera preview because it couldn't access camera", e);
-            } catch (IllegalStateException e) {
-                Log.e(TAG, "Failed to start camera preview.", e);
+            mSubmittedAutoFocus = mAutoFocus;
+            mSubmittedFlash = mFlash;
+            mControlStates.clear();
+            mRepeatingRequestCoalescer.reset();
+            if (mRepeatingRequestCoalescer.resume()) {
+                mCallback.onPreviewStarted();
+            }
+            if (mSwitchStartMillis != 0) {
+                mMetrics.recordFacingSwitch(SystemClock.elapsedRealtime() - mSwitchStartMillis);
+                mSwitchStartMillis = 0;
             }
         }
 
         @Override
         public void onConfigureFailed(@NonNull CameraCaptureSession session) {
             Log.e(TAG, "Failed to configure capture session.");
+            // Let the next surface change try again
+            mSessionPreviewSize = null;
         }
 
         @Override
@@ -133,11 +217,14 @@ class Camera2 extends CameraViewImpl {
 
         @Override
         public void onPrecaptureRequired() {
+            if (mCaptureSession == null) {
+                return;
+            }
             mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER,
                     CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_START);
             setState(STATE_PRECAPTURE);
             try {
-                mCaptureSession.capture(mPreviewRequestBuilder.build(), this, null);
+                mCaptureSession.capture(mPreviewRequestBuilder.build(), this, mCameraHandler);
                 mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER,
                         CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_IDLE);
             } catch (CameraAccessException e) {
@@ -147,62 +234,194 @@ class Camera2 extends CameraViewImpl {
 
         @Override
         public void onReady() {
+            if (mCaptureSession == null) {
+                return;
+            }
             captureStillPicture();
         }
 
+        @Override
+        public void onCaptureTimeout() {
+            Log.w(TAG, "The still capture did not complete in time; restarting the preview");
+            finishStillCapture();
+        }
+
+        @Override
+        public void onConvergenceTimeout(int state) {
+            Log.w(TAG, "3A did not converge in time; capturing anyway (state " + state + ")");
+            if (state == STATE_LOCKING) {
+                mMetrics.recordFocusTimeout();
+            } else {
+                mMetrics.recordExposureTimeout();
+            }
+        }
+
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
+            super.onCaptureCompleted(session, request, result);
+            mControlStates.record(result.getFrameNumber(), SystemClock.elapsedRealtime(),
+                    stateOf(result, CaptureResult.CONTROL_AF_STATE),
+                    stateOf(result, CaptureResult.CONTROL_AE_STATE),
+                    stateOf(result, CaptureResult.CONTROL_AWB_STATE));
+            if (request.getTag() == REPEATING_REQUEST_TAG) {
+                mRepeatingRequestCoalescer.onFrameCompleted();
+            }
+        }
+
     };
 
+    /** Submits {@link #mPreviewRequestBuilder} as the repeating request of the session. */
+    private final RepeatingRequestCoalescer mRepeatingRequestCoalescer =
+            new RepeatingRequestCoalescer(new RepeatingRequestCoalescer.Submitter() {
+                @Override
+                public boolean submit() {
+                    if (mCaptureSession == null) {
+                        // The next session starts from the current controls
+                        return false;
+                    }
+                    mPreviewRequestBuilder.setTag(REPEATING_REQUEST_TAG);
+                    CaptureRequest request = mPreviewRequestBuilder.build();
+                    mPreviewRequestBuilder.setTag(null);
+                    try {
+                        mCaptureSession.setRepeatingRequest(request, mCaptureCallback,
+                                mCameraHandler);
+                        mSubmittedAutoFocus = mAutoFocus;
+                        mSubmittedFlash = mFlash;
+                        return true;
+                    } catch (CameraAccessException e) {
+                        Log.e(TAG, "Failed to set the preview request because it couldn't access"
+                                + " camera", e);
+                    } catch (IllegalStateException e) {
+                        Log.e(TAG, "Failed to set the preview request.", e);
+                    }
+                    // Revert to what the running request has
+                    mAutoFocus = mSubmittedAutoFocus;
+                    mFlash = mSubmittedFlash;
+                    updateAutoFocus();
+                    updateFlash();
+                    return false;
+                }
+            });
+
     private final ImageReader.OnImageAvailableListener mOnImageAvailableListener
             = new ImageReader.OnImageAvailableListener() {
 
         @Override
         public void onImageAvailable(ImageReader reader) {
+            // On the image thread, where the reader is closed as well; a picture queued behind
+            // the close finds it closed
+            byte[] data;
             try (Image image = reader.acquireNextImage()) {
                 Image.Plane[] planes = image.getPlanes();
-                if (planes.length > 0) {
-                    ByteBuffer buffer = planes[0].getBuffer();
-                    byte[] data = new byte[buffer.remaining()];
-                    buffer.get(data);
-                    CameraData cameraData = new CameraData();
-                    cameraData.setJpegData(data);
-                    cameraData.generateBitmap();
-                    mCallback.onPictureTaken(cameraData);
+                if (planes.length == 0) {
+                    return;
                 }
+                ByteBuffer buffer = planes[0].getBuffer();
+                data = new byte[buffer.remaining()];
+                buffer.get(data);
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "Dropped a picture of a closed image reader.", e);
+                return;
             }
+            CameraData cameraData = new CameraData();
+            cameraData.setJpegData(data);
+            cameraData.generateBitmap();
+            mCallback.onPictureTaken(cameraData);
         }
 
     };
 
 
-    private String mCameraId;
+    private final ControlStateHistory mControlStates =
+            new ControlStateHistory(CONTROL_STATE_HISTORY);
+
+    /** Whether the picture in progress locked the focus, which has to be cancelled after. */
+    private boolean mFocusLocked;
+
+    /**
+     * The callback of the still capture in progress, or {@code null}. A callback other than this
+     * one belongs to a capture that has already been given up on.
+     */
+    private CameraCaptureSession.CaptureCallback mStillCaptureCallback;
+
+    /** Whether auto-focus scans the areas set with {@link #setMeteringAndFocusAreas(List)}. */
+    private boolean mFocusOnAreas;
+
+    private final Runnable mClearMeteringAndFocusAreas = new Runnable() {
+        @Override
+        public void run() {
+            clearMeteringAndFocusAreas();
+        }
+    };
+
+    // The camera that is open, or about to be opened by start(). They describe mCamera for as
+    // long as it is open, including while a facing switch opens the next camera.
+    private volatile String mCameraId;
+    private volatile CameraRegistry.Info mCameraInfo;
+
+    // The camera to open, and its plan; promoted to mCameraId, mCameraInfo and mPlan once open.
+    private String mPendingCameraId;
+    private CameraRegistry.Info mPendingCameraInfo;
+    private ResolutionPlan mPendingPlan;
+
+    /** The camera an open is in flight for, so that it is not requested twice. */
+    private String mOpeningCameraId;
 
-    private CameraCharacteristics mCameraCharacteristics;
+    volatile CameraDevice mCamera;
 
-    CameraDevice mCamera;
+    /** Whether the camera should be open; cleared by {@link #stop()} to abort a pending open. */
+    private boolean mOpenRequested;
+
+    /** When the facing switch in progress was requested, or 0 if there is none. */
+    private long mSwitchStartMillis;
 
     CameraCaptureSession mCaptureSession;
 
     CaptureRequest.Builder mPreviewRequestBuilder;
 
+    // What the last capture session was created with; a surface change that leaves them as they
+    // are keeps the session. mSessionPreviewSize is null when there is no session to keep.
+    private Size mSessionPreviewSize;
+    private int mSessionSurfaceGeneration;
+    private ImageReader mSessionImageReader;
+
     private ImageReader mImageReader;
 
-    private final SizeMap mPreviewSizes = new SizeMap();
+    private HandlerThread mImageThread;
+
+    private Handler mImageHandler;
 
-    private final SizeMap mPictureSizes = new SizeMap();
+    /** The resolution plans of the cameras opened so far, by camera ID. */
+    private final ArrayMap<String, ResolutionPlan> mPlans = new ArrayMap<>();
 
-    private int mFacing;
+    /** The plan of {@link #mCameraId}. */
+    private ResolutionPlan mPlan;
+
+    private volatile int mFacing;
 
     private AspectRatio mAspectRatio = Constants.DEFAULT_ASPECT_RATIO;
 
-    private boolean mAutoFocus;
+    private volatile boolean mAutoFocus;
+
+    private volatile int mFlash;
 
-    private int mFlash;
+    // The auto-focus and flash of the running repeating request, to revert to when a change
+    // cannot be submitted
+    private boolean mSubmittedAutoFocus;
+    private int mSubmittedFlash;
 
     private int mDisplayOrientation;
 
+    private boolean mPreviewDuringCapture;
+
+    /** Whether the still capture in progress left the repeating request running. */
+    private boolean mCapturingWithPreview;
+
     Camera2(Callback callback, PreviewImpl preview, Context context) {
         super(callback, preview);
         mCameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        mCameraRegistry = CameraRegistry.get(context);
         mPreview.setCallback(new PreviewImpl.Callback() {
             @Override
             public void onSurfaceChanged() {
@@ -211,34 +430,116 @@ class Camera2 extends CameraViewImpl {
         });
     }
 
+    @Override
+    void setCameraHandler(Handler cameraHandler) {
+        super.setCameraHandler(cameraHandler);
+        mCaptureCallback.setHandler(cameraHandler);
+    }
+
+    @Override
+    void setMetrics(CameraMetrics metrics) {
+        super.setMetrics(metrics);
+        mRepeatingRequestCoalescer.setMetrics(metrics);
+    }
+
     @Override
     boolean start() {
         if (!chooseCameraIdByFacing()) {
             return false;
         }
-        collectCameraInfo();
+        // No camera is open, so the chosen one applies right away
+        promotePendingCamera();
+        startImageThread();
         prepareImageReader();
+        mOpenRequested = true;
         startOpeningCamera();
         return true;
     }
 
     @Override
     void stop() {
-        try {
-            if (null != mCaptureSession) {
-                mCaptureSession.close();
-                mCaptureSession = null;
-            }
-            if (null != mCamera) {
-                mCamera.close();
-                mCamera = null;
-            }
-            if (null != mImageReader) {
-                mImageReader.close();
-                mImageReader = null;
-            }
-        } finally {
+        mOpenRequested = false;
+        mSwitchStartMillis = 0;
+        closeCamera();
+        stopImageThread();
+    }
+
+    private void startImageThread() {
+        if (mImageThread != null) {
+            return;
+        }
+        mImageThread = new HandlerThread("camera_image_thread");
+        mImageThread.start();
+        mImageHandler = new Handler(mImageThread.getLooper());
+    }
+
+    /**
+     * Lets the image thread finish the pictures and reader closes already handed to it, then
+     * ends it.
+     */
+    private void stopImageThread() {
+        if (mImageThread == null) {
+            return;
+        }
+        mImageThread.quitSafely();
+        mImageThread = null;
+        mImageHandler = null;
+    }
+
+    /**
+     * Closes the capture session, the camera device and the image reader.
+     */
+    private void closeCamera() {
+        mSessionPreviewSize = null;
+        mSessionImageReader = null;
+        mRepeatingRequestCoalescer.reset();
+        mControlStates.clear();
+        mFocusLocked = false;
+        mStillCaptureCallback = null;
+        // Also drops the convergence timeout of a picture in progress
+        mCaptureCallback.setState(PictureCaptureCallback.STATE_PREVIEW);
+        if (mCameraHandler != null) {
+            mCameraHandler.removeCallbacks(mClearMeteringAndFocusAreas);
+        }
+        if (null != mCaptureSession) {
+            mCaptureSession.close();
+            mCaptureSession = null;
+        }
+        if (null != mCamera) {
+            mCamera.close();
+            mCamera = null;
+        }
+        if (null != mImageReader) {
+            closeImageReader(mImageReader);
+            mImageReader = null;
+        }
+    }
+
+    /**
+     * Closes {@code reader} on the image thread, so that it cannot be closed while a picture of
+     * it is being copied there.
+     */
+    private void closeImageReader(final ImageReader reader) {
+        if (mImageHandler == null) {
+            reader.close();
+            return;
         }
+        mImageHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                reader.close();
+            }
+        });
+    }
+
+    /**
+     * Gives up the camera after an error or a disconnection. The lifecycle is told, so that the
+     * next start request opens it again.
+     */
+    private void onCameraLost(CameraDevice camera) {
+        stop();
+        camera.close();
+        mCallback.onCameraFailed();
     }
 
     @Override
@@ -253,9 +554,34 @@ class Camera2 extends CameraViewImpl {
         }
         mFacing = facing;
         if (isCameraOpened()) {
+            switchCamera();
+        }
+    }
+
+    /**
+     * Switches the open camera to {@link #mFacing}. The new camera is opened while the current
+     * one keeps the preview running, which is closed once the new one is ready. The resolution
+     * plan of the new camera is reused if it has been opened before.
+     */
+    private void switchCamera() {
+        long startMillis = SystemClock.elapsedRealtime();
+        String previousId = mPendingCameraId;
+        if (!chooseCameraIdByFacing()) {
             stop();
             start();
+            return;
+        }
+        if (mPendingCameraId.equals(previousId)) {
+            return;
+        }
+        if (mCamera.getId().equals(mPendingCameraId)) {
+            // Switched back before the pending camera opened; it is closed when it does
+            mSwitchStartMillis = 0;
+            return;
         }
+        mSwitchStartMillis = startMillis;
+        mMetrics.beginFirstFrame(startMillis);
+        startOpeningCamera();
     }
 
     @Override
@@ -273,12 +599,7 @@ class Camera2 extends CameraViewImpl {
         if (mPreviewRequestBuilder != null) {
             updateAutoFocus();
             if (mCaptureSession != null) {
-                try {
-                    mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(),
-                            mCaptureCallback, null);
-                } catch (CameraAccessException e) {
-                    mAutoFocus = !mAutoFocus; // Revert
-                }
+                mRepeatingRequestCoalescer.requestUpdate();
             }
         }
     }
@@ -306,17 +627,11 @@ class Camera2 extends CameraViewImpl {
         if (mFlash == flash) {
             return;
         }
-        int saved = mFlash;
         mFlash = flash;
         if (mPreviewRequestBuilder != null) {
             updateFlash();
             if (mCaptureSession != null) {
-                try {
-                    mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(),
-                            mCaptureCallback, null);
-                } catch (CameraAccessException e) {
-                    mFlash = saved; // Revert
-                }
+                mRepeatingRequestCoalescer.requestUpdate();
             }
         }
     }
@@ -328,269 +643,314 @@ class Camera2 extends CameraViewImpl {
 
     @Override
     int toggleFlash() {
-        switch (mFlash) {
-            case Constants.FLASH_AUTO:
-                setFlash(Constants.FLASH_ON);
-                break;
-            case Constants.FLASH_OFF:
-                setFlash(Constants.FLASH_AUTO);
-                break;
-            case Constants.FLASH_ON:
-            default:
-                setFlash(Constants.FLASH_OFF);
-                break;
-        }
+        setFlash(nextFlash(mFlash));
         return mFlash;
     }
 
     @Override
     void takePicture() {
-        if (mAutoFocus) {
-            lockFocus();
-        } else {
+        if (mCaptureSession == null) {
+            // Closed while the request was queued on the camera thread
+            Log.w(TAG, "takePicture: capture session is not ready");
+            return;
+        }
+        if (!mAutoFocus) {
+            captureStillPicture();
+        } else if (isFocusConverged()) {
+            mMetrics.recordFocusedCapture(true);
             captureStillPicture();
+        } else {
+            mMetrics.recordFocusedCapture(false);
+            lockFocus();
         }
     }
 
+    /**
+     * @return Whether continuous auto-focus, auto-exposure and auto-white-balance have been
+     * settled over the last frames, so that a picture can be taken without locking focus and
+     * running the precapture sequence first.
+     */
+    private boolean isFocusConverged() {
+        if (mFlash == Constants.FLASH_ON || mFlash == Constants.FLASH_RED_EYE) {
+            // The flash fires only after a precapture sequence
+            return false;
+        }
+        Integer afMode = mPreviewRequestBuilder.get(CaptureRequest.CONTROL_AF_MODE);
+        if (afMode == null || afMode != CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE) {
+            return false;
+        }
+        return mControlStates.isConverged(SystemClock.elapsedRealtime(),
+                CONTROL_STATE_MAX_AGE_MILLIS);
+    }
+
+    private static int stateOf(CaptureResult result, CaptureResult.Key<Integer> key) {
+        Integer state = result.get(key);
+        return state != null ? state : ControlStateHistory.STATE_UNKNOWN;
+    }
+
     @Override
     void setDisplayOrientation(int displayOrientation) {
         mDisplayOrientation = displayOrientation;
     }
 
     @Override
-    void setMeteringAndFocusAreas(List<Camera.Area> meteringAndFocusAreas) {
-        //TODO: Implement
-//        throw new RuntimeException("Set Metering and focus areas is not Supported");
+    void setPreviewDuringCapture(boolean previewDuringCapture) {
+        mPreviewDuringCapture = previewDuringCapture;
+    }
 
-        mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
-                CaptureRequest.CONTROL_AF_MODE_AUTO);
+    @Override
+    void setConvergenceTimeouts(ConvergenceTimeout focusTimeout,
+            ConvergenceTimeout exposureTimeout) {
+        super.setConvergenceTimeouts(focusTimeout, exposureTimeout);
+        mCaptureCallback.setTimeouts(focusTimeout, exposureTimeout);
     }
 
     @Override
-    Size getCaptureResolution() {
-        if (mCaptureSize == null && mCameraCharacteristics != null) {
-            TreeSet<Size> sizes = new TreeSet<>();
-            sizes.addAll(getAvailableCaptureResolutions());
-
-            TreeSet<AspectRatio> aspectRatios = new CommonAspectRatioFilter(
-                    getAvailablePreviewResolutions(),
-                    getAvailableCaptureResolutions()
-            ).filter();
-            AspectRatio targetRatio = aspectRatios.size() > 0 ? aspectRatios.last() : null;
-
-            Iterator<Size> descendingSizes = sizes.descendingIterator();
-            Size size;
-            while (descendingSizes.hasNext() && mCaptureSize == null) {
-                size = descendingSizes.next();
-                if (targetRatio == null || targetRatio.matches(size)) {
-                    mCaptureSize = size;
-                    break;
-                }
-            }
+    int getSensorOrientation() {
+        CameraRegistry.Info info = mCameraInfo;
+        if (!isCameraOpened() || info == null) {
+            return -1;
         }
-
-        return mCaptureSize;
+        return info.getSensorOrientation();
     }
 
+    /**
+     * Meters and focuses on {@code meteringAndFocusAreas} with a single auto-focus scan, as far as
+     * the camera supports regions, and goes back to continuous auto-focus after
+     * {@link #AREA_FOCUS_HOLD_MILLIS}.
+     */
     @Override
-    Size getPreviewResolution() {
-        if (mPreviewSize == null && mCameraCharacteristics != null) {
-            TreeSet<Size> sizes = new TreeSet<>();
-            sizes.addAll(getAvailablePreviewResolutions());
-
-
-            TreeSet<AspectRatio> aspectRatios = findCommonAspectRatios(
-                    getAvailablePreviewResolutions(),
-                    getAvailableCaptureResolutions()
-            );
-
-            AspectRatio targetRatio = aspectRatios.size() > 0 ? aspectRatios.last() : null;
-
-            Iterator<Size> descendingSizes = sizes.descendingIterator();
-            Size size;
-            while (descendingSizes.hasNext() && mPreviewSize == null) {
-                size = descendingSizes.next();
-                if (targetRatio == null || targetRatio.matches(size)) {
-
-                    mPreviewSize = size;
-                }
+    void setMeteringAndFocusAreas(List<Camera.Area> meteringAndFocusAreas) {
+        if (mCaptureSession == null || meteringAndFocusAreas.isEmpty()) {
+            return;
+        }
+        if (mCaptureCallback.getState() != PictureCaptureCallback.STATE_PREVIEW) {
+            // Focus belongs to the picture in progress
+            return;
+        }
+        // With auto-focus off, a tap only meters
+        int maxAf = mAutoFocus
+                && mCameraInfo.isAfModeAvailable(CaptureRequest.CONTROL_AF_MODE_AUTO)
+                ? mCameraInfo.getMaxAfRegions() : 0;
+        int maxAe = mCameraInfo.getMaxAeRegions();
+        if (maxAf == 0 && maxAe == 0) {
+            return;
+        }
+        Rect fieldOfView = mPreviewRequestBuilder.get(CaptureRequest.SCALER_CROP_REGION);
+        if (fieldOfView == null) {
+            // Regions are relative to the active array, whatever its offset on the sensor
+            Rect active = mCameraInfo.getActiveArray();
+            fieldOfView = new Rect(0, 0, active.width(), active.height());
+        }
+        MeteringRectangle[] regions = toMeteringRectangles(meteringAndFocusAreas, fieldOfView);
+        if (maxAe > 0) {
+            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_REGIONS,
+                    limit(regions, maxAe));
+        }
+        if (maxAf > 0) {
+            mFocusOnAreas = true;
+            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_REGIONS,
+                    limit(regions, maxAf));
+            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
+                    CaptureRequest.CONTROL_AF_MODE_AUTO);
+            // The repeating request has to be in AUTO before the trigger; continuous frames
+            // still streaming would cancel the scan
+            mRepeatingRequestCoalescer.submitNow();
+            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+                    CaptureRequest.CONTROL_AF_TRIGGER_START);
+            try {
+                mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback,
+                        mCameraHandler);
+            } catch (CameraAccessException | IllegalStateException e) {
+                Log.e(TAG, "Failed to start the auto-focus scan.", e);
             }
+            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+                    CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
+        } else {
+            mRepeatingRequestCoalescer.requestUpdate();
+        }
+        if (mCameraHandler != null) {
+            mCameraHandler.removeCallbacks(mClearMeteringAndFocusAreas);
+            mCameraHandler.postDelayed(mClearMeteringAndFocusAreas, AREA_FOCUS_HOLD_MILLIS);
         }
-
-        return mPreviewSize;
     }
 
-
-    private TreeSet<AspectRatio> findCommonAspectRatios(List<Size> previewSizes,
-            List<Size> captureSizes) {
-        Set<AspectRatio> previewAspectRatios = new HashSet<>();
-        for (Size size : previewSizes) {
-            if (size.getWidth() >= CameraView.Internal.screenHeight
-                    && size.getWidth() >= CameraView.Internal.screenWidth) {
-                previewAspectRatios.add(AspectRatio.of(size.getWidth(), size.getHeight()));
-            }
+    /**
+     * Goes back to metering the whole frame and to continuous auto-focus.
+     */
+    private void clearMeteringAndFocusAreas() {
+        if (mCaptureSession == null
+                || mCaptureCallback.getState() != PictureCaptureCallback.STATE_PREVIEW) {
+            // The next session, or the end of the picture, starts without areas
+            mFocusOnAreas = false;
+            return;
         }
-
-        Set<AspectRatio> captureAspectRatios = new HashSet<>();
-        for (Size size : captureSizes) {
-            captureAspectRatios.add(AspectRatio.of(size.getWidth(), size.getHeight()));
+        mFocusOnAreas = false;
+        mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_REGIONS, null);
+        mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_REGIONS, null);
+        mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+                CaptureRequest.CONTROL_AF_TRIGGER_CANCEL);
+        try {
+            mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback,
+                    mCameraHandler);
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.e(TAG, "Failed to cancel the auto-focus scan.", e);
         }
+        mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+                CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
+        updateAutoFocus();
+        mRepeatingRequestCoalescer.requestUpdate();
+    }
 
-        TreeSet<AspectRatio> output = new TreeSet<>();
-        for (AspectRatio aspectRatio : previewAspectRatios) {
-            if (captureAspectRatios.contains(aspectRatio)) {
-                output.add(aspectRatio);
-            }
+    private static MeteringRectangle[] toMeteringRectangles(List<Camera.Area> areas,
+            Rect fieldOfView) {
+        MeteringRectangle[] rectangles = new MeteringRectangle[areas.size()];
+        int[] region = new int[4];
+        for (int i = 0; i < rectangles.length; i++) {
+            Camera.Area area = areas.get(i);
+            MeteringRegions.toSensor(area.rect.left, area.rect.top, area.rect.right,
+                    area.rect.bottom, fieldOfView.left, fieldOfView.top, fieldOfView.width(),
+                    fieldOfView.height(), region);
+            rectangles[i] = new MeteringRectangle(region[0], region[1], region[2] - region[0],
+                    region[3] - region[1], area.weight);
         }
-
-        return output;
+        return rectangles;
     }
 
-    private List<Size> getAvailableCaptureResolutions() {
-        List<Size> output = new ArrayList<>();
-
-        if (mCameraCharacteristics != null) {
-            StreamConfigurationMap map = mCameraCharacteristics.get(
-                    CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-            if (map == null) {
-                throw new IllegalStateException("Failed to get configuration map: " + mCameraId);
-            }
+    private static MeteringRectangle[] limit(MeteringRectangle[] regions, int max) {
+        return regions.length <= max ? regions : Arrays.copyOf(regions, max);
+    }
 
-            for (android.util.Size size : map.getOutputSizes(ImageFormat.JPEG)) {
-                output.add(new Size(size.getWidth(), size.getHeight()));
-            }
+    @Override
+    Size getCaptureResolution() {
+        if (mPlan == null) {
+            return null;
         }
-
-        return output;
+        return mPlan.getCaptureSize(mCaptureMemoryBudget, 1,
+                CameraView.Internal.screenWidth, CameraView.Internal.screenHeight);
     }
 
-    private List<Size> getAvailablePreviewResolutions() {
-        List<Size> output = new ArrayList<>();
-
-        if (mCameraCharacteristics != null) {
-            StreamConfigurationMap map = mCameraCharacteristics.get(
-                    CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-            if (map == null) {
-                throw new IllegalStateException("Failed to get configuration map: " + mCameraId);
-            }
-
-            for (android.util.Size size : map.getOutputSizes(mPreview.getOutputClass())) {
-                output.add(new Size(size.getWidth(), size.getHeight()));
-            }
+    @Override
+    Size getPreviewResolution() {
+        if (mPlan == null) {
+            return null;
         }
-
-        return output;
+        return mPlan.getPreviewSize(
+                CameraView.Internal.screenWidth, CameraView.Internal.screenHeight);
     }
 
     /**
      * <p>Chooses a camera ID by the specified camera facing ({@link #mFacing}).</p>
-     * <p>This rewrites {@link #mCameraId}, {@link #mCameraCharacteristics}, and optionally
-     * {@link #mFacing}.</p>
+     * <p>This rewrites {@link #mPendingCameraId}, {@link #mPendingCameraInfo},
+     * {@link #mPendingPlan}, and optionally {@link #mFacing}.</p>
      */
     private boolean chooseCameraIdByFacing() {
-        try {
-            int internalFacing = INTERNAL_FACINGS.get(mFacing);
-            final String[] ids = mCameraManager.getCameraIdList();
-            if (ids.length == 0) { // No camera
-                throw new RuntimeException("No camera available.");
-            }
-            for (String id : ids) {
-                CameraCharacteristics characteristics = mCameraManager.getCameraCharacteristics(id);
-                Integer level = characteristics.get(
-                        CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
-                if (level == null ||
-                        level == CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY) {
-                    continue;
-                }
-                Integer internal = characteristics.get(CameraCharacteristics.LENS_FACING);
-                if (internal == null) {
-                    throw new NullPointerException("Unexpected state: LENS_FACING null");
-                }
-                if (internal == internalFacing) {
-                    mCameraId = id;
-                    mCameraCharacteristics = characteristics;
-                    return true;
-                }
+        int internalFacing = INTERNAL_FACINGS.get(mFacing);
+        final CameraRegistry.Info[] cameras = mCameraRegistry.getCameras();
+        if (cameras.length == 0) { // No camera
+            throw new RuntimeException("No camera available.");
+        }
+        for (CameraRegistry.Info info : cameras) {
+            if (info.isLegacy()) {
+                continue;
             }
-            // Not found
-            mCameraId = ids[0];
-            mCameraCharacteristics = mCameraManager.getCameraCharacteristics(mCameraId);
-            Integer level = mCameraCharacteristics.get(
-                    CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
-            if (level == null ||
-                    level == CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY) {
-                return false;
-            }
-            Integer internal = mCameraCharacteristics.get(CameraCharacteristics.LENS_FACING);
-            if (internal == null) {
-                throw new NullPointerException("Unexpected state: LENS_FACING null");
-            }
-            for (int i = 0, count = INTERNAL_FACINGS.size(); i < count; i++) {
-                if (INTERNAL_FACINGS.valueAt(i) == internal) {
-                    mFacing = INTERNAL_FACINGS.keyAt(i);
-                    return true;
-                }
+            if (info.getLensFacing() == internalFacing) {
+                setPendingCamera(info);
+                return true;
             }
-            // The operation can reach here when the only camera device is an external one.
-            // We treat it as facing back.
-            mFacing = FACING_BACK;
-            return true;
-        } catch (CameraAccessException e) {
-            e.printStackTrace();
-            throw new RuntimeException("Failed to get a list of camera devices", e);
         }
+        // Not found
+        CameraRegistry.Info first = cameras[0];
+        if (first.isLegacy()) {
+            return false;
+        }
+        setPendingCamera(first);
+        for (int i = 0, count = INTERNAL_FACINGS.size(); i < count; i++) {
+            if (INTERNAL_FACINGS.valueAt(i) == first.getLensFacing()) {
+                mFacing = INTERNAL_FACINGS.keyAt(i);
+                return true;
+            }
+        }
+        // The operation can reach here when the only camera device is an external one.
+        // We treat it as facing back.
+        mFacing = FACING_BACK;
+        return true;
     }
 
     /**
-     * <p>Collects some information from {@link #mCameraCharacteristics}.</p>
-     * <p>This rewrites {@link #mPreviewSizes}, {@link #mPictureSizes}, and optionally,
-     * {@link #mAspectRatio}.</p>
+     * <p>Makes {@code info} the camera to open next, collecting its supported sizes unless they
+     * have been collected before.</p>
+     * <p>This rewrites {@link #mPendingCameraId}, {@link #mPendingCameraInfo} and
+     * {@link #mPendingPlan}.</p>
      */
-    private void collectCameraInfo() {
-        StreamConfigurationMap map = mCameraCharacteristics.get(
-                CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-        if (map == null) {
-            throw new IllegalStateException("Failed to get configuration map: " + mCameraId);
+    private void setPendingCamera(CameraRegistry.Info info) {
+        String cameraId = info.getId();
+        ResolutionPlan plan = mPlans.get(cameraId);
+        if (plan == null) {
+            plan = new ResolutionPlan();
+            // SurfaceTexture and SurfaceHolder outputs share the same sizes
+            info.collectPreviewSizes(plan.getPreviewSizes());
+            collectPictureSizes(plan.getPictureSizes(), info);
+            mPlans.put(cameraId, plan);
         }
-        mPreviewSizes.clear();
-        for (android.util.Size size : map.getOutputSizes(mPreview.getOutputClass())) {
-            mPreviewSizes.add(new Size(size.getWidth(), size.getHeight()));
+        mPendingCameraId = cameraId;
+        mPendingCameraInfo = info;
+        mPendingPlan = plan;
+    }
+
+    /**
+     * <p>Makes the pending camera the current one.</p>
+     * <p>This rewrites {@link #mCameraId}, {@link #mCameraInfo}, {@link #mPlan}, and optionally,
+     * {@link #mAspectRatio}.</p>
+     */
+    private void promotePendingCamera() {
+        ResolutionPlan plan = mPendingPlan;
+        if (plan != mPlan) {
+            // Let the session pick its capture size against the budget in effect now
+            plan.invalidateCaptureSize();
         }
-        mPictureSizes.clear();
-        collectPictureSizes(mPictureSizes, map);
+        mCameraId = mPendingCameraId;
+        mCameraInfo = mPendingCameraInfo;
+        mPlan = plan;
 
-        if (!mPreviewSizes.ratios().contains(mAspectRatio)) {
-            mAspectRatio = mPreviewSizes.ratios().iterator().next();
+        if (!plan.getPreviewSizes().ratios().contains(mAspectRatio)) {
+            mAspectRatio = plan.getPreviewSizes().ratios().iterator().next();
         }
     }
 
-    protected void collectPictureSizes(SizeMap sizes, StreamConfigurationMap map) {
-        for (android.util.Size size : map.getOutputSizes(ImageFormat.JPEG)) {
-            mPictureSizes.add(new Size(size.getWidth(), size.getHeight()));
-        }
+    protected void collectPictureSizes(SizeMap sizes, CameraRegistry.Info info) {
+        info.collectJpegSizes(sizes);
     }
 
     private void prepareImageReader() {
-        Size largest = mPictureSizes.sizes(mAspectRatio).last();
-        mImageReader = ImageReader.newInstance(largest.getWidth(), largest.getHeight(),
-                ImageFormat.JPEG, /* maxImages */ 2);
-        mImageReader.setOnImageAvailableListener(mOnImageAvailableListener, null);
+        Size size = mCaptureMemoryBudget.choose(mPlan.getPictureSizes().sizes(mAspectRatio),
+                null, 1);
+        int maxImages = mCaptureMemoryBudget.maxImages(size, MAX_IMAGES);
+        mImageReader = ImageReader.newInstance(size.getWidth(), size.getHeight(),
+                ImageFormat.JPEG, maxImages);
+        mImageReader.setOnImageAvailableListener(mOnImageAvailableListener, mImageHandler);
     }
 
     /**
-     * <p>Starts opening a camera device.</p>
+     * <p>Starts opening the pending camera device, unless it is being opened already.</p>
      * <p>The result will be processed in {@link #mCameraDeviceCallback}.</p>
      */
     private void startOpeningCamera() {
+        if (mPendingCameraId.equals(mOpeningCameraId)) {
+            // An earlier open is still in flight; it is taken when it completes
+            return;
+        }
         try {
-            mCameraManager.openCamera(mCameraId, mCameraDeviceCallback, null);
+            mCameraManager.openCamera(mPendingCameraId, mCameraDeviceCallback, mCameraHandler);
+            mOpeningCameraId = mPendingCameraId;
         } catch (CameraAccessException e) {
-            throw new RuntimeException("Failed to open camera: " + mCameraId, e);
+            throw new RuntimeException("Failed to open camera: " + mPendingCameraId, e);
         }
     }
 
     /**
-     * <p>Starts a capture session for camera preview.</p>
+     * <p>Starts a capture session for camera preview, unless the current one already has the
+     * preview size that would be chosen and the same surfaces.</p>
      * <p>This rewrites {@link #mPreviewRequestBuilder}.</p>
      * <p>The result will be continuously processed in {@link #mSessionCallback}.</p>
      */
@@ -599,22 +959,39 @@ class Camera2 extends CameraViewImpl {
             return;
         }
         Size previewSize = chooseOptimalSize();
+        // The preview resets the buffer size to its own whenever its size changes
         mPreview.setTruePreviewSize(previewSize.getWidth(), previewSize.getHeight());
+        int surfaceGeneration = mPreview.getSurfaceGeneration();
+        if (previewSize.equals(mSessionPreviewSize)
+                && surfaceGeneration == mSessionSurfaceGeneration
+                && mImageReader == mSessionImageReader) {
+            return;
+        }
+        if (mCaptureSession != null) {
+            // Reconfiguring the preview of an open camera
+            long nowMillis = SystemClock.elapsedRealtime();
+            mMetrics.beginFirstFrame(nowMillis);
+            mMetrics.markOpened(nowMillis);
+        }
 //        mPreview.setBufferSize(previewSize.getWidth(), previewSize.getHeight());
         Surface surface = mPreview.getSurface();
 //        mPreview.setTruePreviewSize(previewSize.getWidth(), previewSize.getHeight());
         try {
             mPreviewRequestBuilder = mCamera.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+            mFocusOnAreas = false;
             mPreviewRequestBuilder.addTarget(surface);
             mCamera.createCaptureSession(Arrays.asList(surface, mImageReader.getSurface()),
-                    mSessionCallback, null);
+                    mSessionCallback, mCameraHandler);
+            mSessionPreviewSize = previewSize;
+            mSessionSurfaceGeneration = surfaceGeneration;
+            mSessionImageReader = mImageReader;
         } catch (CameraAccessException e) {
             throw new RuntimeException("Failed to start camera session");
         }
     }
 
     /**
-     * Chooses the optimal preview size based on {@link #mPreviewSizes} and the surface size.
+     * Chooses the optimal preview size based on {@link #mPlan} and the surface size.
      *
      * @return The picked size for camera preview.
      */
@@ -629,7 +1006,7 @@ class Camera2 extends CameraViewImpl {
             surfaceLonger = surfaceWidth;
             surfaceShorter = surfaceHeight;
         }
-        SortedSet<Size> candidates = mPreviewSizes.sizes(mAspectRatio);
+        SortedSet<Size> candidates = mPlan.getPreviewSizes().sizes(mAspectRatio);
         // Pick the smallest of those big enough.
         for (Size size : candidates) {
             if (size.getWidth() >= surfaceLonger && size.getHeight() >= surfaceShorter) {
@@ -645,14 +1022,15 @@ class Camera2 extends CameraViewImpl {
      */
     void updateAutoFocus() {
         if (mAutoFocus) {
-            int[] modes = mCameraCharacteristics.get(
-                    CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
             // Auto focus is not supported
-            if (modes == null || modes.length == 0 ||
-                    (modes.length == 1 && modes[0] == CameraCharacteristics.CONTROL_AF_MODE_OFF)) {
+            if (!mCameraInfo.isAutoFocusSupported()) {
                 mAutoFocus = false;
                 mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
                         CaptureRequest.CONTROL_AF_MODE_OFF);
+            } else if (mFocusOnAreas) {
+                // Keeps the lens where the scan of the areas put it
+                mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
+                        CaptureRequest.CONTROL_AF_MODE_AUTO);
             } else {
                 mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
                         CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
@@ -705,11 +1083,15 @@ class Camera2 extends CameraViewImpl {
      * Locks the focus as the first step for a still image capture.
      */
     private void lockFocus() {
+        // The trigger must not end up in the repeating request; changes wait for unlockFocus()
+        mRepeatingRequestCoalescer.hold();
+        mFocusLocked = true;
         mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
                 CaptureRequest.CONTROL_AF_TRIGGER_START);
         try {
             mCaptureCallback.setState(PictureCaptureCallback.STATE_LOCKING);
-            mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback, null);
+            mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback,
+                    mCameraHandler);
         } catch (CameraAccessException e) {
             Log.e(TAG, "Failed to lock focus.", e);
         }
@@ -719,6 +1101,14 @@ class Camera2 extends CameraViewImpl {
      * Captures a still picture.
      */
     void captureStillPicture() {
+        if (!mFocusLocked) {
+            // Otherwise held since lockFocus(), and released once by unlockFocus()
+            mRepeatingRequestCoalescer.hold();
+        }
+        // Below FULL, a capture interleaved with the preview may stall or drop frames
+        mCapturingWithPreview = mPreviewDuringCapture && mCameraInfo.isFullOrBetter();
+        // Bounds the capture as well, should its result never come
+        mCaptureCallback.setState(PictureCaptureCallback.STATE_CAPTURING);
         try {
             CaptureRequest.Builder captureRequestBuilder = mCamera.createCaptureRequest(
                     CameraDevice.TEMPLATE_STILL_CAPTURE);
@@ -752,52 +1142,90 @@ class Camera2 extends CameraViewImpl {
                     break;
             }
             // Calculate JPEG orientation.
-            @SuppressWarnings("ConstantConditions")
-            int sensorOrientation = mCameraCharacteristics.get(
-                    CameraCharacteristics.SENSOR_ORIENTATION);
+            // Of the open camera, which a pending facing switch has not replaced yet
+            int sensorOrientation = mCameraInfo.getSensorOrientation();
+            boolean front = mCameraInfo.getLensFacing() == CameraCharacteristics.LENS_FACING_FRONT;
             captureRequestBuilder.set(CaptureRequest.JPEG_ORIENTATION,
-                    (sensorOrientation +
-                            mDisplayOrientation * (mFacing == FACING_FRONT ? 1 : -1) +
-                            360) % 360);
-            // Stop preview and capture a still picture.
-            mCaptureSession.stopRepeating();
-            mCaptureSession.capture(captureRequestBuilder.build(),
-                    new CameraCaptureSession.CaptureCallback() {
-                        @Override
-                        public void onCaptureCompleted(@NonNull CameraCaptureSession session,
-                                @NonNull CaptureRequest request,
-                                @NonNull TotalCaptureResult result) {
-                            unlockFocus();
-                        }
-                    }, null);
-        } catch (CameraAccessException e) {
+                    (sensorOrientation + mDisplayOrientation * (front ? 1 : -1) + 360) % 360);
+            if (!mCapturingWithPreview) {
+                mCaptureSession.stopRepeating();
+            }
+            mStillCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+                @Override
+                public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                        @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
+                    if (mStillCaptureCallback == this) {
+                        finishStillCapture();
+                    }
+                }
+
+                @Override
+                public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                        @NonNull CaptureRequest request, @NonNull CaptureFailure failure) {
+                    if (mStillCaptureCallback == this) {
+                        Log.e(TAG, "Still capture failed (reason " + failure.getReason() + ")");
+                        finishStillCapture();
+                    }
+                }
+            };
+            mCaptureSession.capture(captureRequestBuilder.build(), mStillCaptureCallback,
+                    mCameraHandler);
+        } catch (CameraAccessException | IllegalStateException e) {
             Log.e(TAG, "Cannot capture a still picture.", e);
+            finishStillCapture();
+        }
+    }
+
+    /**
+     * Ends the still capture in progress, whether it completed, failed or timed out, so that the
+     * preview runs again along with the changes held back.
+     */
+    private void finishStillCapture() {
+        mStillCaptureCallback = null;
+        if (mCaptureSession == null) {
+            // Closed meanwhile; the next session starts afresh
+            return;
         }
+        unlockFocus();
     }
 
     /**
-     * Unlocks the auto-focus and restart camera preview. This is supposed to be called after
-     * capturing a still picture.
+     * Unlocks the auto-focus and restart camera preview, unless it kept running. This is supposed
+     * to be called after capturing a still picture.
      */
     void unlockFocus() {
-        mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
-                CaptureRequest.CONTROL_AF_TRIGGER_CANCEL);
-        try {
-            mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback, null);
-            updateAutoFocus();
-            updateFlash();
+        if (mFocusLocked) {
+            mFocusLocked = false;
             mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
-                    CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
-            mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(), mCaptureCallback,
-                    null);
-            mCaptureCallback.setState(PictureCaptureCallback.STATE_PREVIEW);
-        } catch (CameraAccessException e) {
-            Log.e(TAG, "Failed to restart camera preview.", e);
+                    CaptureRequest.CONTROL_AF_TRIGGER_CANCEL);
+            try {
+                mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback,
+                        mCameraHandler);
+            } catch (CameraAccessException | IllegalStateException e) {
+                // The preview is restarted all the same
+                Log.e(TAG, "Failed to unlock focus.", e);
+            }
+        }
+        updateAutoFocus();
+        updateFlash();
+        mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+                CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
+        // Together with any control change made during the capture
+        if (mCapturingWithPreview) {
+            mRepeatingRequestCoalescer.release();
+        } else {
+            mRepeatingRequestCoalescer.resume();
         }
+        mCaptureCallback.setState(PictureCaptureCallback.STATE_PREVIEW);
     }
 
     /**
      * A {@link CameraCaptureSession.CaptureCallback} for capturing a still picture.
+     *
+     * <p>Each stage waiting for 3A gives up after its {@link ConvergenceTimeout}; the picture is
+     * then taken with whatever focus and exposure there is. The frame limit is checked as results
+     * arrive; the time limit is also posted to the handler, so that it expires even when results
+     * stop coming. The still capture itself is bounded by the exposure time limit.</p>
      */
     private static abstract class PictureCaptureCallback
             extends CameraCaptureSession.CaptureCallback {
@@ -811,11 +1239,86 @@ class Camera2 extends CameraViewImpl {
 
         private int mState;
 
+        /** The frames completed and the time when the current state was entered. */
+        private int mStateFrames;
+        private long mStateStartMillis;
+
+        private ConvergenceTimeout mFocusTimeout = ConvergenceTimeout.DEFAULT;
+
+        private ConvergenceTimeout mExposureTimeout = ConvergenceTimeout.DEFAULT;
+
+        /** The handler the capture callbacks are delivered on, or {@code null}. */
+        private Handler mHandler;
+
+        private final Runnable mTimedOut = new Runnable() {
+            @Override
+            public void run() {
+                onTimedOut();
+            }
+        };
+
         PictureCaptureCallback() {
         }
 
+        void setHandler(Handler handler) {
+            mHandler = handler;
+        }
+
+        void setTimeouts(ConvergenceTimeout focusTimeout, ConvergenceTimeout exposureTimeout) {
+            mFocusTimeout = focusTimeout;
+            mExposureTimeout = exposureTimeout;
+        }
+
+        int getState() {
+            return mState;
+        }
+
         void setState(int state) {
             mState = state;
+            mStateFrames = 0;
+            mStateStartMillis = SystemClock.elapsedRealtime();
+            if (mHandler != null) {
+                mHandler.removeCallbacks(mTimedOut);
+                ConvergenceTimeout timeout = timeoutOf(state);
+                if (timeout != null && timeout.getMaxMillis() > 0) {
+                    mHandler.postDelayed(mTimedOut, timeout.getMaxMillis());
+                }
+            }
+        }
+
+        private ConvergenceTimeout timeoutOf(int state) {
+            switch (state) {
+                case STATE_LOCKING:
+                    return mFocusTimeout;
+                case STATE_PRECAPTURE:
+                case STATE_WAITING:
+                case STATE_CAPTURING:
+                    return mExposureTimeout;
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * Gives up waiting when no result arrived before the time limit of the current state.
+         */
+        private void onTimedOut() {
+            switch (mState) {
+                case STATE_LOCKING:
+                    onConvergenceTimeout(STATE_LOCKING);
+                    // Without a result the exposure state is unknown; capture right away
+                    onFocusLocked(null);
+                    break;
+                case STATE_PRECAPTURE:
+                case STATE_WAITING:
+                    onConvergenceTimeout(mState);
+                    setState(STATE_CAPTURING);
+                    onReady();
+                    break;
+                case STATE_CAPTURING:
+                    onCaptureTimeout();
+                    break;
+            }
         }
 
         @Override
@@ -827,6 +1330,7 @@ class Camera2 extends CameraViewImpl {
         @Override
         public void onCaptureCompleted(@NonNull CameraCaptureSession session,
                 @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
+            mStateFrames++;
             process(result);
         }
 
@@ -834,19 +1338,12 @@ class Camera2 extends CameraViewImpl {
             switch (mState) {
                 case STATE_LOCKING: {
                     Integer af = result.get(CaptureResult.CONTROL_AF_STATE);
-                    if (af == null) {
-                        break;
-                    }
-                    if (af == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED ||
-                            af == CaptureResult.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED) {
-                        Integer ae = result.get(CaptureResult.CONTROL_AE_STATE);
-                        if (ae == null || ae == CaptureResult.CONTROL_AE_STATE_CONVERGED) {
-                            setState(STATE_CAPTURING);
-                            onReady();
-                        } else {
-                            setState(STATE_LOCKED);
-                            onPrecaptureRequired();
-                        }
+                    if (af != null && (af == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED ||
+                            af == CaptureResult.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED)) {
+                        onFocusLocked(result);
+                    } else if (isExpired(mFocusTimeout)) {
+                        onConvergenceTimeout(STATE_LOCKING);
+                        onFocusLocked(result);
                     }
                     break;
                 }
@@ -856,6 +1353,10 @@ class Camera2 extends CameraViewImpl {
                             ae == CaptureRequest.CONTROL_AE_STATE_FLASH_REQUIRED ||
                             ae == CaptureResult.CONTROL_AE_STATE_CONVERGED) {
                         setState(STATE_WAITING);
+                    } else if (isExpired(mExposureTimeout)) {
+                        onConvergenceTimeout(STATE_PRECAPTURE);
+                        setState(STATE_CAPTURING);
+                        onReady();
                     }
                     break;
                 }
@@ -864,12 +1365,36 @@ class Camera2 extends CameraViewImpl {
                     if (ae == null || ae != CaptureResult.CONTROL_AE_STATE_PRECAPTURE) {
                         setState(STATE_CAPTURING);
                         onReady();
+                    } else if (isExpired(mExposureTimeout)) {
+                        onConvergenceTimeout(STATE_WAITING);
+                        setState(STATE_CAPTURING);
+                        onReady();
                     }
                     break;
                 }
             }
         }
 
+        /**
+         * Moves on from {@link #STATE_LOCKING}, running the precapture sequence unless the
+         * exposure has converged or, without a {@code result}, is unknown.
+         */
+        private void onFocusLocked(CaptureResult result) {
+            Integer ae = result != null ? result.get(CaptureResult.CONTROL_AE_STATE) : null;
+            if (ae == null || ae == CaptureResult.CONTROL_AE_STATE_CONVERGED) {
+                setState(STATE_CAPTURING);
+                onReady();
+            } else {
+                setState(STATE_LOCKED);
+                onPrecaptureRequired();
+            }
+        }
+
+        private boolean isExpired(ConvergenceTimeout timeout) {
+            return timeout.isExpired(mStateFrames,
+                    SystemClock.elapsedRealtime() - mStateStartMillis);
+        }
+
         /**
          * Called when it is ready to take a still picture.
          */
@@ -880,6 +1405,16 @@ class Camera2 extends CameraViewImpl {
          */
         public abstract void onPrecaptureRequired();
 
+        /**
+         * Called when the still capture did not complete within the time limit.
+         */
+        public abstract void onCaptureTimeout();
+
+        /**
+         * Called when {@code state} gave up waiting for 3A to converge.
+         */
+        public abstract void onConvergenceTimeout(int state);
+
     }
 
 }
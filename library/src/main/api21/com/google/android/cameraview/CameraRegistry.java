@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+/**
+ * Process-wide cache of what the Camera2 API reports about each camera.
+ *
+ * <p>Camera IDs are enumerated once and the characteristics the backend needs are copied into
+ * immutable {@link Info} snapshots, so that opening or switching cameras and taking pictures
+ * do not have to query the camera service again. A camera that shows up later (such as an
+ * external one) makes the registry enumerate again on the next access.</p>
+ */
+@TargetApi(21)
+class CameraRegistry {
+
+    /** Reported as the lens facing when the camera does not tell. */
+    static final int LENS_FACING_UNKNOWN = -1;
+
+    private static CameraRegistry sInstance;
+
+    private final CameraManager mCameraManager;
+
+    private Info[] mCameras;
+
+    private final CameraManager.AvailabilityCallback mAvailabilityCallback
+            = new CameraManager.AvailabilityCallback() {
+
+        @Override
+        public void onCameraAvailable(@NonNull String cameraId) {
+            synchronized (CameraRegistry.this) {
+                if (mCameras != null && find(mCameras, cameraId) == null) {
+                    mCameras = null;
+                }
+            }
+        }
+
+    };
+
+    /**
+     * @param context Any context; only its application context is kept, as the registry and the
+     *                callback it registers live as long as the process.
+     */
+    static synchronized CameraRegistry get(Context context) {
+        if (sInstance == null) {
+            sInstance = new CameraRegistry((CameraManager) context.getApplicationContext()
+                    .getSystemService(Context.CAMERA_SERVICE));
+        }
+        return sInstance;
+    }
+
+    private CameraRegistry(CameraManager cameraManager) {
+        mCameraManager = cameraManager;
+        mCameraManager.registerAvailabilityCallback(mAvailabilityCallback,
+                new Handler(Looper.getMainLooper()));
+    }
+
+    /**
+     * @return All cameras, in the order the camera service lists them.
+     */
+    synchronized Info[] getCameras() {
+        if (mCameras == null) {
+            try {
+                String[] ids = mCameraManager.getCameraIdList();
+                Info[] cameras = new Info[ids.length];
+                for (int i = 0; i < ids.length; i++) {
+                    cameras[i] = new Info(ids[i],
+                            mCameraManager.getCameraCharacteristics(ids[i]));
+                }
+                mCameras = cameras;
+            } catch (CameraAccessException e) {
+                throw new RuntimeException("Failed to get a list of camera devices", e);
+            }
+        }
+        return mCameras;
+    }
+
+    /**
+     * @return The camera with {@code cameraId}, or {@code null} if there is none.
+     */
+    Info getCamera(String cameraId) {
+        return find(getCameras(), cameraId);
+    }
+
+    private static Info find(Info[] cameras, String cameraId) {
+        for (Info info : cameras) {
+            if (info.mId.equals(cameraId)) {
+                return info;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Immutable snapshot of the characteristics of a camera.
+     */
+    static final class Info {
+
+        private final String mId;
+
+        private final int mLensFacing;
+
+        private final int mHardwareLevel;
+
+        private final int mSensorOrientation;
+
+        private final int[] mAfModes;
+
+        private final Rect mActiveArray;
+
+        private final int mMaxAfRegions;
+
+        private final int mMaxAeRegions;
+
+        /** Width and height pairs of the sizes for {@link SurfaceTexture} outputs. */
+        private final int[] mPreviewSizes;
+
+        /** Width and height pairs of the JPEG output sizes. */
+        private final int[] mJpegSizes;
+
+        /** Width and height pairs of the high resolution JPEG output sizes (API 23+). */
+        private final int[] mHighResolutionJpegSizes;
+
+        Info(String id, CameraCharacteristics characteristics) {
+            mId = id;
+            mLensFacing = valueOf(characteristics.get(CameraCharacteristics.LENS_FACING),
+                    LENS_FACING_UNKNOWN);
+            mHardwareLevel = valueOf(characteristics.get(
+                    CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL),
+                    CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY);
+            mSensorOrientation = valueOf(
+                    characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION), 0);
+            int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+            mAfModes = afModes != null ? afModes.clone() : new int[0];
+            Rect activeArray = characteristics.get(
+                    CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+            mActiveArray = activeArray != null ? new Rect(activeArray) : new Rect();
+            mMaxAfRegions = valueOf(
+                    characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AF), 0);
+            mMaxAeRegions = valueOf(
+                    characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AE), 0);
+            StreamConfigurationMap map = characteristics.get(
+                    CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            if (map == null) {
+                throw new IllegalStateException("Failed to get configuration map: " + id);
+            }
+            mPreviewSizes = toArray(map.getOutputSizes(SurfaceTexture.class));
+            mJpegSizes = toArray(map.getOutputSizes(ImageFormat.JPEG));
+            mHighResolutionJpegSizes = Build.VERSION.SDK_INT >= 23
+                    ? getHighResolutionJpegSizes(map) : new int[0];
+        }
+
+        String getId() {
+            return mId;
+        }
+
+        /**
+         * @return One of the {@code CameraCharacteristics.LENS_FACING_*} values, or
+         * {@link #LENS_FACING_UNKNOWN}.
+         */
+        int getLensFacing() {
+            return mLensFacing;
+        }
+
+        int getHardwareLevel() {
+            return mHardwareLevel;
+        }
+
+        boolean isLegacy() {
+            return mHardwareLevel == CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY;
+        }
+
+        /**
+         * @return Whether the hardware level is FULL or above, which guarantees that a still
+         * capture can be interleaved with the repeating preview request at full frame rate.
+         */
+        boolean isFullOrBetter() {
+            return mHardwareLevel != CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY
+                    && mHardwareLevel
+                    != CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LIMITED;
+        }
+
+        int getSensorOrientation() {
+            return mSensorOrientation;
+        }
+
+        boolean isAfModeAvailable(int afMode) {
+            for (int mode : mAfModes) {
+                if (mode == afMode) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return Whether any auto-focus mode other than {@code CONTROL_AF_MODE_OFF} exists.
+         */
+        boolean isAutoFocusSupported() {
+            for (int mode : mAfModes) {
+                if (mode != CameraCharacteristics.CONTROL_AF_MODE_OFF) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return A copy of the sensor area the metering regions refer to; empty if unknown.
+         */
+        Rect getActiveArray() {
+            return new Rect(mActiveArray);
+        }
+
+        int getMaxAfRegions() {
+            return mMaxAfRegions;
+        }
+
+        int getMaxAeRegions() {
+            return mMaxAeRegions;
+        }
+
+        void collectPreviewSizes(SizeMap sizes) {
+            collect(mPreviewSizes, sizes);
+        }
+
+        void collectJpegSizes(SizeMap sizes) {
+            collect(mJpegSizes, sizes);
+        }
+
+        void collectHighResolutionJpegSizes(SizeMap sizes) {
+            collect(mHighResolutionJpegSizes, sizes);
+        }
+
+        private static void collect(int[] dimensions, SizeMap sizes) {
+            for (int i = 0; i < dimensions.length; i += 2) {
+                sizes.add(new Size(dimensions[i], dimensions[i + 1]));
+            }
+        }
+
+        private static int valueOf(Integer value, int defaultValue) {
+            return value != null ? value : defaultValue;
+        }
+
+        private static int[] toArray(android.util.Size[] sizes) {
+            if (sizes == null) {
+                return new int[0];
+            }
+            int[] dimensions = new int[sizes.length * 2];
+            for (int i = 0; i < sizes.length; i++) {
+                dimensions[i * 2] = sizes[i].getWidth();
+                dimensions[i * 2 + 1] = sizes[i].getHeight();
+            }
+            return dimensions;
+        }
+
+        @TargetApi(23)
+        private static int[] getHighResolutionJpegSizes(StreamConfigurationMap map) {
+            return toArray(map.getHighResolutionOutputSizes(ImageFormat.JPEG));
+        }
+
+    }
+
+}
@@ -1,57 +0,0 @@
-/*
- * Copyright (C) 2016 The Android Open Source Project
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.google.android.cameraview;
-
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
-
-public class CommonAspectRatioFilter {
-
-    private List<Size> mPreviewSizes;
-    private List<Size> mCaptureSizes;
-
-    public CommonAspectRatioFilter(List<Size> previewSizes, List<Size> captureSizes) {
-        this.mPreviewSizes = previewSizes;
-        this.mCaptureSizes = captureSizes;
-    }
-
-    public TreeSet<AspectRatio> filter() {
-        Set<AspectRatio> previewAspectRatios = new HashSet<>();
-        for (Size size : mPreviewSizes) {
-            if (size.getWidth() >= CameraView.Internal.screenWidth && size.getHeight() >= CameraView.Internal.screenHeight) {
-                previewAspectRatios.add(AspectRatio.of(size.getWidth(), size.getHeight()));
-            }
-        }
-
-        Set<AspectRatio> captureAspectRatios = new HashSet<>();
-        for (Size size : mCaptureSizes) {
-            captureAspectRatios.add(AspectRatio.of(size.getWidth(), size.getHeight()));
-        }
-
-        TreeSet<AspectRatio> output = new TreeSet<>();
-        for (AspectRatio aspectRatio : previewAspectRatios) {
-            if (captureAspectRatios.contains(aspectRatio)) {
-                output.add(aspectRatio);
-            }
-        }
-
-        return output;
-    }
-
-}
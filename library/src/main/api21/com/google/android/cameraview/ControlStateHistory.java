@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.annotation.TargetApi;
+import android.hardware.camera2.CaptureResult;
+
+/**
+ * The AF, AE and AWB states of the last few preview frames, kept in a ring of primitive arrays
+ * so that recording a frame allocates nothing.
+ *
+ * <p>A still capture can skip the focus lock and the precapture sequence when the recent frames
+ * show 3A converged, see {@link #isConverged(long, long)}.</p>
+ *
+ * <p>Not thread-safe; used on the camera thread.</p>
+ */
+@TargetApi(21)
+class ControlStateHistory {
+
+    /** Stands for a state the result did not report. */
+    static final int STATE_UNKNOWN = -1;
+
+    /** The number of consecutive converged frames that count as stable. */
+    static final int STABLE_FRAMES = 3;
+
+    private final long[] mFrameNumbers;
+
+    private final long[] mTimesMillis;
+
+    private final int[] mAfStates;
+
+    private final int[] mAeStates;
+
+    private final int[] mAwbStates;
+
+    /** Where the next frame goes. */
+    private int mNext;
+
+    private int mSize;
+
+    ControlStateHistory(int capacity) {
+        mFrameNumbers = new long[capacity];
+        mTimesMillis = new long[capacity];
+        mAfStates = new int[capacity];
+        mAeStates = new int[capacity];
+        mAwbStates = new int[capacity];
+    }
+
+    /**
+     * @param afState  A {@code CONTROL_AF_STATE_*} value, or {@link #STATE_UNKNOWN}.
+     * @param aeState  A {@code CONTROL_AE_STATE_*} value, or {@link #STATE_UNKNOWN}.
+     * @param awbState A {@code CONTROL_AWB_STATE_*} value, or {@link #STATE_UNKNOWN}.
+     */
+    void record(long frameNumber, long timeMillis, int afState, int aeState, int awbState) {
+        mFrameNumbers[mNext] = frameNumber;
+        mTimesMillis[mNext] = timeMillis;
+        mAfStates[mNext] = afState;
+        mAeStates[mNext] = aeState;
+        mAwbStates[mNext] = awbState;
+        mNext = (mNext + 1) % mFrameNumbers.length;
+        if (mSize < mFrameNumbers.length) {
+            mSize++;
+        }
+    }
+
+    void clear() {
+        mSize = 0;
+        mNext = 0;
+    }
+
+    /**
+     * @return Whether the last {@link #STABLE_FRAMES} frames are consecutive, the last of them no
+     * older than {@code maxAgeMillis} before {@code nowMillis}, and all of them have AF focused
+     * and AE and AWB converged or locked.
+     */
+    boolean isConverged(long nowMillis, long maxAgeMillis) {
+        if (mSize < STABLE_FRAMES) {
+            return false;
+        }
+        int last = index(0);
+        if (nowMillis - mTimesMillis[last] > maxAgeMillis) {
+            return false;
+        }
+        for (int i = 0; i < STABLE_FRAMES; i++) {
+            int index = index(i);
+            if (i > 0 && mFrameNumbers[index] != mFrameNumbers[index(i - 1)] - 1) {
+                return false;
+            }
+            if (!isAfFocused(mAfStates[index]) || !isAeConverged(mAeStates[index])
+                    || !isAwbConverged(mAwbStates[index])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The position of the frame {@code age} frames before the last one.
+     */
+    private int index(int age) {
+        int length = mFrameNumbers.length;
+        return (mNext - 1 - age + length) % length;
+    }
+
+    private static boolean isAfFocused(int state) {
+        return state == CaptureResult.CONTROL_AF_STATE_PASSIVE_FOCUSED
+                || state == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED;
+    }
+
+    private static boolean isAeConverged(int state) {
+        // Like the capture sequence, treat a device that does not report AE as converged.
+        // FLASH_REQUIRED is left out on purpose: the flash needs the precapture sequence.
+        return state == STATE_UNKNOWN
+                || state == CaptureResult.CONTROL_AE_STATE_CONVERGED
+                || state == CaptureResult.CONTROL_AE_STATE_LOCKED;
+    }
+
+    private static boolean isAwbConverged(int state) {
+        return state == STATE_UNKNOWN
+                || state == CaptureResult.CONTROL_AWB_STATE_CONVERGED
+                || state == CaptureResult.CONTROL_AWB_STATE_LOCKED;
+    }
+
+}
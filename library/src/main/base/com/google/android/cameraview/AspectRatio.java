@@ -75,7 +75,11 @@ public class AspectRatio implements Comparable<AspectRatio>, Parcelable {
         return AspectRatio.of(mY, mX);
     }
 
-    public static AspectRatio of(int x, int y) {
+    /**
+     * Returns the cached instance for the ratio of {@code x} to {@code y}. Safe to call from any
+     * thread.
+     */
+    public static synchronized AspectRatio of(int x, int y) {
         int gcd = gcd(x, y);
         x /= gcd;
         y /= gcd;
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.util.Arrays;
+
+/**
+ * Finds the {@link AspectRatio}s supported by both preview and capture, restricted to preview
+ * ratios that have a size covering the view.
+ *
+ * <p>The last result is kept; asking again for the same {@link SizeMap}s (unmodified since) and
+ * view size returns it without allocating. Not thread-safe.</p>
+ */
+class AspectRatioIntersection {
+
+    private SizeMap mPreviewSizes;
+    private SizeMap mPictureSizes;
+    private int mPreviewVersion;
+    private int mPictureVersion;
+    private int mViewWidth;
+    private int mViewHeight;
+
+    private Result mResult;
+
+    /**
+     * @param previewSizes The preview sizes of the camera.
+     * @param pictureSizes The picture sizes of the camera.
+     * @param viewWidth    The width of the view the preview is shown in, in pixels.
+     * @param viewHeight   The height of the view the preview is shown in, in pixels.
+     * @return The common aspect ratios, in ascending order.
+     */
+    Result intersect(SizeMap previewSizes, SizeMap pictureSizes, int viewWidth, int viewHeight) {
+        if (mResult != null
+                && mPreviewSizes == previewSizes && mPreviewVersion == previewSizes.version()
+                && mPictureSizes == pictureSizes && mPictureVersion == pictureSizes.version()
+                && mViewWidth == viewWidth && mViewHeight == viewHeight) {
+            return mResult;
+        }
+        mResult = compute(previewSizes, pictureSizes, viewWidth, viewHeight);
+        mPreviewSizes = previewSizes;
+        mPreviewVersion = previewSizes.version();
+        mPictureSizes = pictureSizes;
+        mPictureVersion = pictureSizes.version();
+        mViewWidth = viewWidth;
+        mViewHeight = viewHeight;
+        return mResult;
+    }
+
+    static Result compute(SizeMap previewSizes, SizeMap pictureSizes, int viewWidth,
+            int viewHeight) {
+        // Sensor sizes are landscape while views are usually portrait; compare side by side
+        int viewLonger = Math.max(viewWidth, viewHeight);
+        int viewShorter = Math.min(viewWidth, viewHeight);
+        AspectRatio[] ratios = new AspectRatio[previewSizes.ratios().size()];
+        int count = 0;
+        for (AspectRatio ratio : previewSizes.ratios()) {
+            if (pictureSizes.sizes(ratio) == null) {
+                continue;
+            }
+            // All sizes of a ratio scale together, so the largest one covers the most
+            Size largest = previewSizes.sizes(ratio).last();
+            if (Math.max(largest.getWidth(), largest.getHeight()) >= viewLonger
+                    && Math.min(largest.getWidth(), largest.getHeight()) >= viewShorter) {
+                ratios[count++] = ratio;
+            }
+        }
+        ratios = Arrays.copyOf(ratios, count);
+        Arrays.sort(ratios);
+        return new Result(ratios);
+    }
+
+    /**
+     * Immutable, sorted set of common aspect ratios.
+     */
+    static final class Result {
+
+        private final AspectRatio[] mRatios;
+
+        private Result(AspectRatio[] ratios) {
+            mRatios = ratios;
+        }
+
+        int size() {
+            return mRatios.length;
+        }
+
+        boolean isEmpty() {
+            return mRatios.length == 0;
+        }
+
+        AspectRatio get(int index) {
+            return mRatios[index];
+        }
+
+        /**
+         * @return The widest common ratio, or {@code null} if there is none.
+         */
+        AspectRatio last() {
+            return mRatios.length > 0 ? mRatios[mRatios.length - 1] : null;
+        }
+
+        boolean contains(AspectRatio ratio) {
+            for (AspectRatio r : mRatios) {
+                if (r.equals(ratio)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+}
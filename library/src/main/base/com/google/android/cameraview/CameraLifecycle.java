@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Drives a camera backend through {@link #STATE_CLOSED}, {@link #STATE_OPENING},
+ * {@link #STATE_OPEN}, {@link #STATE_PREVIEWING} and {@link #STATE_CLOSING}.
+ *
+ * <p>{@link #requestStart()} and {@link #requestStop()} only record whether the camera should be
+ * open and schedule one pass that moves the backend towards it, so requests made in quick
+ * succession are coalesced: a start followed by a stop before the camera is opened does
+ * nothing, and neither does a stop followed by a start while it is open.</p>
+ *
+ * <p>The backend reports its transitions through {@link #onOpened()},
+ * {@link #onPreviewStarted()} and {@link #onClosed()}, which tell whether the event is still
+ * current and should be delivered to the listeners. Everything except the requests runs on the
+ * thread of the executor.</p>
+ */
+class CameraLifecycle {
+
+    static final int STATE_CLOSED = 0;
+    static final int STATE_OPENING = 1;
+    static final int STATE_OPEN = 2;
+    static final int STATE_PREVIEWING = 3;
+    static final int STATE_CLOSING = 4;
+
+    interface Backend {
+
+        /**
+         * Starts opening the camera and its preview; {@link #onOpened()} is called once it is
+         * open, synchronously or not.
+         *
+         * @return {@code false} if the camera could not be opened.
+         */
+        boolean start();
+
+        /**
+         * Closes the camera, or cancels opening it.
+         */
+        void stop();
+
+    }
+
+    private final Executor mExecutor;
+
+    private final Backend mBackend;
+
+    private volatile int mState = STATE_CLOSED;
+
+    private volatile boolean mStartRequested;
+
+    private final AtomicBoolean mUpdatePending = new AtomicBoolean();
+
+    /** Whether the listeners have been told the camera is open. */
+    private boolean mOpenDelivered;
+
+    private final Runnable mUpdate = new Runnable() {
+        @Override
+        public void run() {
+            mUpdatePending.set(false);
+            update();
+        }
+    };
+
+    /**
+     * @param executor Runs the transitions; the backend reports to this object on its thread.
+     * @param backend  The backend to drive.
+     */
+    CameraLifecycle(Executor executor, Backend backend) {
+        mExecutor = executor;
+        mBackend = backend;
+    }
+
+    int getState() {
+        return mState;
+    }
+
+    /**
+     * Requests the camera to be open. May be called on any thread.
+     */
+    void requestStart() {
+        mStartRequested = true;
+        scheduleUpdate();
+    }
+
+    /**
+     * Requests the camera to be closed. May be called on any thread.
+     */
+    void requestStop() {
+        mStartRequested = false;
+        scheduleUpdate();
+    }
+
+    /**
+     * Called by the backend when a camera has been opened, including one that replaces the open
+     * camera, such as on a facing switch.
+     *
+     * @return Whether to deliver the event; {@code false} if the camera was opened for a request
+     * that has been withdrawn since, in which case it is closed shortly.
+     */
+    boolean onOpened() {
+        if (mState == STATE_CLOSING) {
+            return false;
+        }
+        mState = STATE_OPEN;
+        if (!mStartRequested) {
+            // Do not stop the backend from within its own callback
+            scheduleUpdate();
+            return false;
+        }
+        mOpenDelivered = true;
+        return true;
+    }
+
+    /**
+     * Called by the backend when the preview of the open camera has started.
+     */
+    void onPreviewStarted() {
+        if (mState == STATE_OPEN) {
+            mState = STATE_PREVIEWING;
+        }
+    }
+
+    /**
+     * Called by the backend when a camera has been closed.
+     *
+     * @return Whether to deliver the event; {@code false} if the listeners were never told the
+     * camera was open.
+     */
+    boolean onClosed() {
+        if (mState == STATE_OPEN || mState == STATE_PREVIEWING) {
+            // Not closed by us; get back to the requested state
+            mState = STATE_CLOSED;
+            scheduleUpdate();
+        }
+        boolean deliver = mOpenDelivered;
+        mOpenDelivered = false;
+        return deliver;
+    }
+
+    /**
+     * Called by the backend when the camera failed to open, or the open camera was lost to an
+     * error or a disconnection, and the backend has stopped. Unlike {@link #onClosed()}, the
+     * camera is not opened again until the next {@link #requestStart()}.
+     *
+     * @return Whether to tell the listeners the camera was closed.
+     */
+    boolean onFailed() {
+        if (mState != STATE_CLOSING) {
+            mState = STATE_CLOSED;
+        }
+        boolean deliver = mOpenDelivered;
+        mOpenDelivered = false;
+        return deliver;
+    }
+
+    private void scheduleUpdate() {
+        if (mUpdatePending.compareAndSet(false, true)) {
+            mExecutor.execute(mUpdate);
+        }
+    }
+
+    /**
+     * Moves the backend towards the requested state.
+     */
+    private void update() {
+        boolean startRequested = mStartRequested;
+        switch (mState) {
+            case STATE_CLOSED:
+                if (startRequested) {
+                    mState = STATE_OPENING;
+                    if (!mBackend.start() && mState == STATE_OPENING) {
+                        mState = STATE_CLOSED;
+                    }
+                }
+                break;
+            case STATE_OPENING:
+            case STATE_OPEN:
+            case STATE_PREVIEWING:
+                if (!startRequested) {
+                    mState = STATE_CLOSING;
+                    mBackend.stop();
+                    mState = STATE_CLOSED;
+                }
+                break;
+            case STATE_CLOSING:
+                break;
+        }
+    }
+
+}
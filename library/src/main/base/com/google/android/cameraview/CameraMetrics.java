@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+/**
+ * Timings measured by the camera backend, for monitoring how fast the camera responds.
+ *
+ * <p>Written on the camera thread; safe to read from any thread.</p>
+ */
+public final class CameraMetrics {
+
+    private volatile long mFacingSwitchLatencyMillis = -1;
+
+    private volatile int mFacingSwitchCount;
+
+    private volatile long mOpenMillis = -1;
+
+    private volatile long mConfigureMillis = -1;
+
+    private volatile long mFirstFrameMillis = -1;
+
+    private volatile int mRepeatingRequestsSubmitted;
+
+    private volatile int mRepeatingRequestsCoalesced;
+
+    private volatile int mFocusedCaptureCount;
+
+    private volatile int mFocusLockSkipCount;
+
+    private volatile int mFocusTimeoutCount;
+
+    private volatile int mExposureTimeoutCount;
+
+    /** Whether a measurement of the time to the first frame is in progress. */
+    private volatile boolean mAwaitingFirstFrame;
+
+    // The marks of the measurement in progress, guarded by this
+    private long mBeginMillis;
+    private long mOpenedMillis;
+    private long mPreviewStartedMillis;
+
+    CameraMetrics() {
+    }
+
+    /**
+     * @return How long the last facing switch took, from the request until the preview of the new
+     * camera was started, in milliseconds; {@code -1} if the facing has not been switched.
+     */
+    public long getFacingSwitchLatencyMillis() {
+        return mFacingSwitchLatencyMillis;
+    }
+
+    /**
+     * @return The number of facing switches done while the camera was open.
+     */
+    public int getFacingSwitchCount() {
+        return mFacingSwitchCount;
+    }
+
+    void recordFacingSwitch(long latencyMillis) {
+        mFacingSwitchLatencyMillis = latencyMillis;
+        mFacingSwitchCount++;
+    }
+
+    /**
+     * @return The number of times the repeating preview request was submitted (Camera2).
+     */
+    public int getRepeatingRequestsSubmitted() {
+        return mRepeatingRequestsSubmitted;
+    }
+
+    /**
+     * @return The number of preview request updates that were folded into another submission
+     * rather than submitted on their own (Camera2).
+     */
+    public int getRepeatingRequestsCoalesced() {
+        return mRepeatingRequestsCoalesced;
+    }
+
+    void recordRepeatingRequestSubmitted() {
+        mRepeatingRequestsSubmitted++;
+    }
+
+    void recordRepeatingRequestCoalesced() {
+        mRepeatingRequestsCoalesced++;
+    }
+
+    /**
+     * @return The number of pictures taken with auto-focus on (Camera2).
+     */
+    public int getFocusedCaptureCount() {
+        return mFocusedCaptureCount;
+    }
+
+    /**
+     * @return The share of the pictures taken with auto-focus on that skipped the focus lock and
+     * the precapture sequence because 3A had already converged, from 0 to 1; {@code -1} if no such
+     * picture has been taken (Camera2).
+     */
+    public float getFocusLockSkipRate() {
+        int count = mFocusedCaptureCount;
+        if (count == 0) {
+            return -1;
+        }
+        return (float) mFocusLockSkipCount / count;
+    }
+
+    /**
+     * @return The number of pictures taken without waiting any longer for focus, because it did
+     * not lock in time.
+     */
+    public int getFocusTimeoutCount() {
+        return mFocusTimeoutCount;
+    }
+
+    /**
+     * @return The number of pictures taken without waiting any longer for the precapture
+     * metering, because exposure did not converge in time (Camera2).
+     */
+    public int getExposureTimeoutCount() {
+        return mExposureTimeoutCount;
+    }
+
+    void recordFocusTimeout() {
+        mFocusTimeoutCount++;
+    }
+
+    void recordExposureTimeout() {
+        mExposureTimeoutCount++;
+    }
+
+    /**
+     * @param skippedLock Whether the capture went ahead without locking focus first.
+     */
+    void recordFocusedCapture(boolean skippedLock) {
+        if (skippedLock) {
+            mFocusLockSkipCount++;
+        }
+        mFocusedCaptureCount++;
+    }
+
+    /**
+     * @return How long opening the camera took in the last measurement of the time to the first
+     * frame, in milliseconds; {@code 0} if the camera was already open, {@code -1} if there has
+     * been no measurement.
+     */
+    public long getOpenMillis() {
+        return mOpenMillis;
+    }
+
+    /**
+     * @return How long it took from the camera being open to the preview being started in the
+     * last measurement, in milliseconds; {@code -1} if there has been no measurement.
+     */
+    public long getConfigureMillis() {
+        return mConfigureMillis;
+    }
+
+    /**
+     * @return How long it took from the preview being started to the first frame reaching the
+     * view in the last measurement, in milliseconds; {@code -1} if there has been no measurement.
+     */
+    public long getFirstFrameMillis() {
+        return mFirstFrameMillis;
+    }
+
+    /**
+     * @return The time from the last start, facing switch or preview reconfiguration to the first
+     * frame reaching the view, in milliseconds; {@code -1} if there has been no measurement.
+     */
+    public long getTimeToFirstFrameMillis() {
+        if (mFirstFrameMillis < 0) {
+            return -1;
+        }
+        return mOpenMillis + mConfigureMillis + mFirstFrameMillis;
+    }
+
+    /**
+     * Starts measuring the time to the first frame, replacing a measurement in progress.
+     */
+    synchronized void beginFirstFrame(long nowMillis) {
+        mBeginMillis = nowMillis;
+        mOpenedMillis = -1;
+        mPreviewStartedMillis = -1;
+        mAwaitingFirstFrame = true;
+    }
+
+    synchronized void markOpened(long nowMillis) {
+        if (mAwaitingFirstFrame && mOpenedMillis < 0) {
+            mOpenedMillis = nowMillis;
+        }
+    }
+
+    synchronized void markPreviewStarted(long nowMillis) {
+        if (mAwaitingFirstFrame && mOpenedMillis >= 0 && mPreviewStartedMillis < 0) {
+            mPreviewStartedMillis = nowMillis;
+        }
+    }
+
+    /**
+     * Called for every frame that reaches the view. Frames before the preview has been started
+     * are from the previous camera or session, and are ignored.
+     *
+     * @return Whether this frame completed a measurement.
+     */
+    boolean markFrame(long nowMillis) {
+        if (!mAwaitingFirstFrame) {
+            return false;
+        }
+        synchronized (this) {
+            if (!mAwaitingFirstFrame || mPreviewStartedMillis < 0) {
+                return false;
+            }
+            mAwaitingFirstFrame = false;
+            mOpenMillis = mOpenedMillis - mBeginMillis;
+            mConfigureMillis = mPreviewStartedMillis - mOpenedMillis;
+            mFirstFrameMillis = nowMillis - mPreviewStartedMillis;
+            return true;
+        }
+    }
+
+}
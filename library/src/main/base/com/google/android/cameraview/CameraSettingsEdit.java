@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.hardware.Camera;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Setting changes staged to be applied together, see {@link CameraViewImpl#apply}.
+ */
+@SuppressWarnings("deprecation")
+class CameraSettingsEdit {
+
+    private boolean mHasFlash;
+
+    @Flash
+    private int mFlash;
+
+    private boolean mHasAutoFocus;
+
+    private boolean mAutoFocus;
+
+    private List<Camera.Area> mMeteringAreas;
+
+    void setFlash(@Flash int flash) {
+        mHasFlash = true;
+        mFlash = flash;
+    }
+
+    boolean hasFlash() {
+        return mHasFlash;
+    }
+
+    @Flash
+    int getFlash() {
+        return mFlash;
+    }
+
+    void setAutoFocus(boolean autoFocus) {
+        mHasAutoFocus = true;
+        mAutoFocus = autoFocus;
+    }
+
+    boolean hasAutoFocus() {
+        return mHasAutoFocus;
+    }
+
+    boolean getAutoFocus() {
+        return mAutoFocus;
+    }
+
+    void setMeteringAreas(List<Camera.Area> meteringAreas) {
+        mMeteringAreas = new ArrayList<>(meteringAreas);
+    }
+
+    /**
+     * @return The metering and focus areas to set, or {@code null} to leave them as they are.
+     */
+    List<Camera.Area> getMeteringAreas() {
+        return mMeteringAreas;
+    }
+
+    boolean isEmpty() {
+        return !mHasFlash && !mHasAutoFocus && mMeteringAreas == null;
+    }
+
+}
@@ -17,15 +17,37 @@
 package com.google.android.cameraview;
 
 import android.hardware.Camera;
+import android.os.Handler;
 
 import java.util.List;
 
+/**
+ * A camera backend.
+ *
+ * <p>All the methods are called on the camera thread, the looper of the handler given to
+ * {@link #setCameraHandler(Handler)}. Backends deliver the callbacks of the camera device and of
+ * its capture requests on that looper as well, so that their state needs no locking. Work that
+ * does not touch that state, such as copying and decoding a captured picture, may run on threads
+ * the backend owns. The {@link Callback} is called on either; it moves to the main thread
+ * itself where it needs to.</p>
+ */
 abstract class CameraViewImpl {
 
     protected final Callback mCallback;
 
     protected final PreviewImpl mPreview;
 
+    protected CaptureMemoryBudget mCaptureMemoryBudget = new CaptureMemoryBudget();
+
+    protected CameraMetrics mMetrics = new CameraMetrics();
+
+    /** The handler of the camera thread, or {@code null} for the looper of the calling thread. */
+    protected Handler mCameraHandler;
+
+    protected ConvergenceTimeout mFocusTimeout = ConvergenceTimeout.DEFAULT;
+
+    protected ConvergenceTimeout mExposureTimeout = ConvergenceTimeout.DEFAULT;
+
     CameraViewImpl(Callback callback, PreviewImpl preview) {
         mCallback = callback;
         mPreview = preview;
@@ -56,20 +78,88 @@ abstract class CameraViewImpl {
     @Flash
     abstract int toggleFlash();
 
+    /**
+     * @return The flash mode {@link #toggleFlash()} switches to from {@code flash}.
+     */
+    @Flash
+    static int nextFlash(@Flash int flash) {
+        switch (flash) {
+            case Constants.FLASH_AUTO:
+                return Constants.FLASH_ON;
+            case Constants.FLASH_OFF:
+                return Constants.FLASH_AUTO;
+            case Constants.FLASH_ON:
+            default:
+                return Constants.FLASH_OFF;
+        }
+    }
+
+    /**
+     * Applies all the changes in {@code edit}. Backends that can commit several changes at once
+     * override this.
+     */
+    void apply(CameraSettingsEdit edit) {
+        if (edit.hasAutoFocus()) {
+            setAutoFocus(edit.getAutoFocus());
+        }
+        if (edit.hasFlash()) {
+            setFlash(edit.getFlash());
+        }
+        if (edit.getMeteringAreas() != null) {
+            setMeteringAndFocusAreas(edit.getMeteringAreas());
+        }
+    }
+
     abstract void takePicture();
 
     abstract void setDisplayOrientation(int displayOrientation);
 
+    /**
+     * @return The orientation of the sensor of the open camera in degrees, or {@code -1} if no
+     * camera is open. Called from the main thread as well.
+     */
+    abstract int getSensorOrientation();
+
     abstract void setMeteringAndFocusAreas(List<Camera.Area> meteringAndFocusAreas);
 
     abstract Size getCaptureResolution();
 
     abstract Size getPreviewResolution();
 
+    void setCaptureMemoryBudget(CaptureMemoryBudget captureMemoryBudget) {
+        mCaptureMemoryBudget = captureMemoryBudget;
+    }
+
+    void setMetrics(CameraMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    void setCameraHandler(Handler cameraHandler) {
+        mCameraHandler = cameraHandler;
+    }
+
+    /**
+     * Bounds how long taking a picture waits for focus and for exposure to converge.
+     */
+    void setConvergenceTimeouts(ConvergenceTimeout focusTimeout,
+            ConvergenceTimeout exposureTimeout) {
+        mFocusTimeout = focusTimeout;
+        mExposureTimeout = exposureTimeout;
+    }
+
+    /**
+     * Asks the backend to keep the preview running while a still picture is captured, where the
+     * hardware allows it. Backends that can override this.
+     */
+    void setPreviewDuringCapture(boolean previewDuringCapture) {
+    }
+
     interface Callback {
 
         void onCameraOpened();
 
+        void onPreviewStarted();
+
         void onCameraClosed();
 
         void onCameraFailed();
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+/**
+ * Estimates how much memory a still capture costs and caps the capture size accordingly.
+ *
+ * <p>The cost of a capture of a given {@link Size} is the decoded bitmap produced by
+ * {@link CameraData#getBitmap()} (plus its rotated copy) and the JPEG buffers held by the
+ * backend while the picture is in flight.</p>
+ *
+ * <p>The budget is configured from the main thread and read on the camera thread.</p>
+ */
+class CaptureMemoryBudget {
+
+    /** ARGB_8888 */
+    private static final int BYTES_PER_DECODED_PIXEL = 4;
+
+    /** {@link CameraData#generateBitmap()} keeps the decoded bitmap and a rotated copy. */
+    private static final int DECODED_COPIES = 2;
+
+    /** HALs typically size JPEG buffers at up to 1.5 bytes per pixel. */
+    private static final int JPEG_BYTES_PER_TWO_PIXELS = 3;
+
+    /** The share of the heap a single capture may use when the budget is derived from it. */
+    private static final int HEAP_SHARE_DIVISOR = 2;
+
+    /** Each downgrade halves the budget; stop before the capture size becomes useless. */
+    private static final int MAX_DOWNGRADES = 3;
+
+    private volatile long mBudget = Constants.CAPTURE_MEMORY_BUDGET_UNLIMITED;
+
+    private volatile long mHeapLimit;
+
+    private volatile int mDowngrades;
+
+    /**
+     * @param bytes The budget in bytes, {@link Constants#CAPTURE_MEMORY_BUDGET_UNLIMITED} or
+     *              {@link Constants#CAPTURE_MEMORY_BUDGET_AUTO}.
+     */
+    void setBudget(long bytes) {
+        mBudget = bytes;
+        mDowngrades = 0;
+    }
+
+    long getBudget() {
+        return mBudget;
+    }
+
+    /**
+     * @param memoryClass The per-application heap limit in megabytes, as reported by
+     *                    {@code ActivityManager.getMemoryClass()}.
+     */
+    void setMemoryClass(int memoryClass) {
+        mHeapLimit = memoryClass * 1024L * 1024L;
+    }
+
+    /**
+     * Halves the budget for the sessions started from now on. An unlimited budget falls back to
+     * the heap-derived one first.
+     */
+    void downgrade() {
+        if (mDowngrades < MAX_DOWNGRADES) {
+            mDowngrades++;
+        }
+    }
+
+    int getDowngrades() {
+        return mDowngrades;
+    }
+
+    /**
+     * @return The number of bytes a capture may use, or {@code Long.MAX_VALUE} if unlimited.
+     */
+    long getEffectiveBudget() {
+        long budget;
+        int downgrades = mDowngrades;
+        if (mBudget == Constants.CAPTURE_MEMORY_BUDGET_UNLIMITED) {
+            if (downgrades == 0 || mHeapLimit <= 0) {
+                return Long.MAX_VALUE;
+            }
+            // The first downgrade only brings an unlimited budget down to the heap share
+            budget = mHeapLimit / HEAP_SHARE_DIVISOR;
+            downgrades--;
+        } else if (mBudget == Constants.CAPTURE_MEMORY_BUDGET_AUTO) {
+            if (mHeapLimit <= 0) {
+                return Long.MAX_VALUE;
+            }
+            budget = mHeapLimit / HEAP_SHARE_DIVISOR;
+        } else {
+            budget = mBudget;
+        }
+        return budget >> downgrades;
+    }
+
+    boolean fits(Size size, int images) {
+        return estimateCost(size, images) <= getEffectiveBudget();
+    }
+
+    /**
+     * Chooses the largest size matching {@code ratio} that fits into the budget.
+     *
+     * @param sizes  The candidates, in any order.
+     * @param ratio  The aspect ratio to match, or {@code null} to accept any size.
+     * @param images The number of JPEG buffers the backend holds at minimum.
+     * @return The largest fitting size, the smallest matching size if none fits, or {@code null}
+     * if no size matches.
+     */
+    Size choose(Iterable<Size> sizes, AspectRatio ratio, int images) {
+        Size largestFitting = null;
+        Size smallest = null;
+        for (Size size : sizes) {
+            if (ratio != null && !ratio.matches(size)) {
+                continue;
+            }
+            if (smallest == null || size.compareTo(smallest) < 0) {
+                smallest = size;
+            }
+            if (fits(size, images)
+                    && (largestFitting == null || size.compareTo(largestFitting) > 0)) {
+                largestFitting = size;
+            }
+        }
+        return largestFitting != null ? largestFitting : smallest;
+    }
+
+    /**
+     * @return The largest number of JPEG buffers up to {@code desired} that fits into the budget
+     * together with the decoded bitmap; never less than 1.
+     */
+    int maxImages(Size size, int desired) {
+        for (int images = desired; images > 1; images--) {
+            if (fits(size, images)) {
+                return images;
+            }
+        }
+        return 1;
+    }
+
+    static long estimateCost(Size size, int images) {
+        return estimateDecodedBytes(size) + images * estimateJpegBytes(size);
+    }
+
+    static long estimateDecodedBytes(Size size) {
+        return pixels(size) * BYTES_PER_DECODED_PIXEL * DECODED_COPIES;
+    }
+
+    static long estimateJpegBytes(Size size) {
+        return pixels(size) * JPEG_BYTES_PER_TWO_PIXELS / 2;
+    }
+
+    private static long pixels(Size size) {
+        return (long) size.getWidth() * size.getHeight();
+    }
+
+}
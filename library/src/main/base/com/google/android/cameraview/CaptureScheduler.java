@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs focus and capture jobs one at a time, in order of priority.
+ *
+ * <p>A job starts the camera operation in {@link Job#run()} and reports its end through
+ * {@link #finish(Job)}, typically from the camera callback. The next job is handed to the
+ * executor right away, so that back-to-back captures follow each other without delay.</p>
+ *
+ * <p>At most {@code capacity} jobs wait at a time; further ones are rejected. A job that is
+ * cancelled while it runs can still call {@link #finish(Job)}, which is then ignored.</p>
+ *
+ * <p>Not thread-safe; used on the camera thread, which the executor has to run jobs on.</p>
+ */
+class CaptureScheduler {
+
+    /** Focus runs before anything else that waits, so that a capture gets the focused scene. */
+    static final int PRIORITY_FOCUS = 0;
+
+    static final int PRIORITY_CAPTURE = 1;
+
+    private static final int PRIORITY_COUNT = 2;
+
+    interface Job {
+
+        /**
+         * Starts the job. {@link #finish(Job)} has to be called when it is done, or when it
+         * fails.
+         */
+        void run();
+
+    }
+
+    private final Executor mExecutor;
+
+    private final int mCapacity;
+
+    private final ArrayDeque<Job>[] mQueues;
+
+    private Job mRunning;
+
+    /** Whether the executor has been asked to start the next job and has not done so yet. */
+    private boolean mNextScheduled;
+
+    private final Runnable mRunNext = new Runnable() {
+        @Override
+        public void run() {
+            mNextScheduled = false;
+            if (mRunning != null) {
+                return;
+            }
+            Job job = poll();
+            if (job == null) {
+                return;
+            }
+            mRunning = job;
+            job.run();
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    CaptureScheduler(Executor executor, int capacity) {
+        mExecutor = executor;
+        mCapacity = capacity;
+        mQueues = new ArrayDeque[PRIORITY_COUNT];
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            mQueues[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * @param priority {@link #PRIORITY_FOCUS} or {@link #PRIORITY_CAPTURE}.
+     * @return {@code false} if the job was rejected because too many are waiting.
+     */
+    boolean submit(int priority, Job job) {
+        if (getPendingCount() >= mCapacity) {
+            return false;
+        }
+        mQueues[priority].add(job);
+        scheduleNext();
+        return true;
+    }
+
+    /**
+     * Marks {@code job} as done and starts the next one. Does nothing if {@code job} is not the
+     * one running, such as after {@link #cancelAll()}.
+     */
+    void finish(Job job) {
+        if (mRunning != job) {
+            return;
+        }
+        mRunning = null;
+        scheduleNext();
+    }
+
+    /**
+     * Drops the waiting jobs and forgets the running one.
+     *
+     * @return The number of jobs dropped, including the running one.
+     */
+    int cancelAll() {
+        int count = getPendingCount();
+        for (ArrayDeque<Job> queue : mQueues) {
+            queue.clear();
+        }
+        if (mRunning != null) {
+            mRunning = null;
+            count++;
+        }
+        return count;
+    }
+
+    boolean isRunning(Job job) {
+        return job != null && mRunning == job;
+    }
+
+    boolean isIdle() {
+        return mRunning == null && getPendingCount() == 0;
+    }
+
+    int getPendingCount() {
+        int count = 0;
+        for (ArrayDeque<Job> queue : mQueues) {
+            count += queue.size();
+        }
+        return count;
+    }
+
+    private void scheduleNext() {
+        if (mRunning != null || mNextScheduled || getPendingCount() == 0) {
+            return;
+        }
+        mNextScheduled = true;
+        mExecutor.execute(mRunNext);
+    }
+
+    private Job poll() {
+        for (ArrayDeque<Job> queue : mQueues) {
+            Job job = queue.poll();
+            if (job != null) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+}
@@ -30,4 +30,7 @@ public interface Constants {
     int FLASH_AUTO = 3;
     int FLASH_RED_EYE = 4;
 
+    long CAPTURE_MEMORY_BUDGET_UNLIMITED = 0;
+    long CAPTURE_MEMORY_BUDGET_AUTO = -1;
+
 }
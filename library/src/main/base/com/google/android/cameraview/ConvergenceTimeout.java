@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+/**
+ * How long a stage of the capture sequence, such as locking focus or the precapture metering,
+ * may wait for 3A to converge before the picture is taken regardless.
+ *
+ * <p>The stage ends after {@code maxFrames} preview frames or {@code maxMillis} milliseconds,
+ * whichever comes first; {@code 0} leaves out that limit.</p>
+ */
+final class ConvergenceTimeout {
+
+    /** About a second at 30 fps; the time limit covers low-light frame rates. */
+    static final ConvergenceTimeout DEFAULT = new ConvergenceTimeout(30, 1000);
+
+    private final int mMaxFrames;
+
+    private final long mMaxMillis;
+
+    ConvergenceTimeout(int maxFrames, long maxMillis) {
+        if (maxFrames < 0 || maxMillis < 0) {
+            throw new IllegalArgumentException(
+                    "Negative timeout: " + maxFrames + " frames, " + maxMillis + "ms");
+        }
+        mMaxFrames = maxFrames;
+        mMaxMillis = maxMillis;
+    }
+
+    int getMaxFrames() {
+        return mMaxFrames;
+    }
+
+    long getMaxMillis() {
+        return mMaxMillis;
+    }
+
+    /**
+     * @param frames        The number of frames completed since the stage began.
+     * @param elapsedMillis The time since the stage began.
+     */
+    boolean isExpired(int frames, long elapsedMillis) {
+        return (mMaxFrames > 0 && frames >= mMaxFrames)
+                || (mMaxMillis > 0 && elapsedMillis >= mMaxMillis);
+    }
+
+}
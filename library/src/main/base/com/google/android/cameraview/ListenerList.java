@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Listeners that are each called on their own {@link Executor}.
+ *
+ * <p>The listeners are kept in an array that is replaced on every change, so that events can be
+ * dispatched from any thread without locking, and listeners may be added or removed while an
+ * event is being delivered. A listener removed before an event reaches it on its executor does
+ * not get the event.</p>
+ *
+ * @param <L> The type of the listeners.
+ */
+class ListenerList<L> {
+
+    interface Event<L> {
+        void dispatch(L listener);
+    }
+
+    private static final Entry[] EMPTY = new Entry[0];
+
+    private volatile Entry[] mEntries = EMPTY;
+
+    /**
+     * @param listener The listener; may be added more than once.
+     * @param executor Where {@code listener} is called.
+     */
+    synchronized void add(L listener, Executor executor) {
+        if (listener == null || executor == null) {
+            throw new NullPointerException();
+        }
+        Entry[] entries = mEntries;
+        Entry[] updated = new Entry[entries.length + 1];
+        System.arraycopy(entries, 0, updated, 0, entries.length);
+        updated[entries.length] = new Entry<>(listener, executor);
+        mEntries = updated;
+    }
+
+    /**
+     * Removes the first registration of {@code listener}.
+     *
+     * @return {@code false} if {@code listener} was not registered.
+     */
+    synchronized boolean remove(L listener) {
+        Entry[] entries = mEntries;
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].mListener.equals(listener)) {
+                entries[i].mRegistered = false;
+                Entry[] updated = entries.length == 1 ? EMPTY : new Entry[entries.length - 1];
+                System.arraycopy(entries, 0, updated, 0, i);
+                System.arraycopy(entries, i + 1, updated, i, entries.length - i - 1);
+                mEntries = updated;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return mEntries.length;
+    }
+
+    /**
+     * Hands {@code event} to the executor of every listener registered now. Returns without
+     * waiting unless an executor runs the event in place.
+     */
+    @SuppressWarnings("unchecked")
+    void dispatch(final Event<L> event) {
+        for (final Entry entry : mEntries) {
+            entry.mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (entry.mRegistered) {
+                        event.dispatch((L) entry.mListener);
+                    }
+                }
+            });
+        }
+    }
+
+    private static class Entry<L> {
+
+        final L mListener;
+
+        final Executor mExecutor;
+
+        volatile boolean mRegistered = true;
+
+        Entry(L listener, Executor executor) {
+            mListener = listener;
+            mExecutor = executor;
+        }
+
+    }
+
+}
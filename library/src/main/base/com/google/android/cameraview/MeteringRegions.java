@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+/**
+ * Maps metering and focus areas from the coordinates of {@code Camera.Area}, -1000 to 1000
+ * across the field of view, onto the pixel coordinates of the sensor, as camera2 metering
+ * regions expect.
+ */
+final class MeteringRegions {
+
+    static final int AREA_MIN = -1000;
+
+    static final int AREA_MAX = 1000;
+
+    private static final int AREA_SPAN = AREA_MAX - AREA_MIN;
+
+    private MeteringRegions() {
+    }
+
+    /**
+     * Maps an area onto the field of view of the sensor, normally the active array or the crop
+     * region when zoomed. Coordinates outside of -1000 to 1000 are clamped, and the result has at
+     * least one pixel in each direction.
+     *
+     * @param out Receives the left, top, right and bottom of the region, in this order.
+     */
+    static void toSensor(int areaLeft, int areaTop, int areaRight, int areaBottom,
+            int fovLeft, int fovTop, int fovWidth, int fovHeight, int[] out) {
+        int left = toSensor(areaLeft, fovLeft, fovWidth);
+        int top = toSensor(areaTop, fovTop, fovHeight);
+        int right = toSensor(areaRight, fovLeft, fovWidth);
+        int bottom = toSensor(areaBottom, fovTop, fovHeight);
+        if (right <= left) {
+            if (right < fovLeft + fovWidth - 1) {
+                right = left + 1;
+            } else {
+                left = right - 1;
+            }
+        }
+        if (bottom <= top) {
+            if (bottom < fovTop + fovHeight - 1) {
+                bottom = top + 1;
+            } else {
+                top = bottom - 1;
+            }
+        }
+        out[0] = left;
+        out[1] = top;
+        out[2] = right;
+        out[3] = bottom;
+    }
+
+    /**
+     * @return The pixel {@code coordinate} falls on, from {@code start} to
+     * {@code start + length - 1}.
+     */
+    static int toSensor(int coordinate, int start, int length) {
+        int clamped = Math.max(AREA_MIN, Math.min(AREA_MAX, coordinate));
+        return start + (int) ((long) (clamped - AREA_MIN) * (length - 1) / AREA_SPAN);
+    }
+
+}
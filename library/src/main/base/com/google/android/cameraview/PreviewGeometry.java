@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+/**
+ * Computes the transform that fits the camera preview buffers into the preview view: rotated for
+ * the display orientation, then scaled around the center so that the buffers keep their aspect
+ * ratio and fill the view, the overflow being cropped.
+ *
+ * <p>The transform is only recomputed when the view size, the buffer size or the rotation
+ * changes. It is laid out as the nine values of {@code android.graphics.Matrix}, so that it can
+ * be computed and tested without Android.</p>
+ */
+class PreviewGeometry {
+
+    private int mViewWidth = -1;
+    private int mViewHeight = -1;
+    private int mBufferWidth = -1;
+    private int mBufferHeight = -1;
+    private int mRotation = -1;
+
+    private float mScaleX = 1;
+    private float mScaleY = 1;
+
+    /** Row-major 3x3 affine transform, as taken by {@code Matrix.setValues}. */
+    private final float[] mValues = new float[]{1, 0, 0, 0, 1, 0, 0, 0, 1};
+
+    /**
+     * @param viewWidth    The width of the view in pixels.
+     * @param viewHeight   The height of the view in pixels.
+     * @param bufferWidth  The width of the preview buffers.
+     * @param bufferHeight The height of the preview buffers.
+     * @param rotation     The display orientation; one of 0, 90, 180 and 270.
+     * @return {@code true} if the transform has changed since the last call.
+     */
+    boolean update(int viewWidth, int viewHeight, int bufferWidth, int bufferHeight,
+            int rotation) {
+        if (viewWidth == mViewWidth && viewHeight == mViewHeight
+                && bufferWidth == mBufferWidth && bufferHeight == mBufferHeight
+                && rotation == mRotation) {
+            return false;
+        }
+        mViewWidth = viewWidth;
+        mViewHeight = viewHeight;
+        mBufferWidth = bufferWidth;
+        mBufferHeight = bufferHeight;
+        mRotation = rotation;
+        computeScale();
+        computeValues();
+        return true;
+    }
+
+    private void computeScale() {
+        mScaleX = 1;
+        mScaleY = 1;
+        if (mBufferWidth <= 0 || mBufferHeight <= 0 || mViewHeight <= 0) {
+            return;
+        }
+        // The buffers are in sensor orientation, hence the width of the view is matched with the
+        // height of the buffers.
+        int targetHeight = (int) (mViewWidth * ((float) mBufferWidth / mBufferHeight));
+        if (targetHeight <= 0) {
+            return;
+        }
+        float scale = (float) targetHeight / mViewHeight;
+        if (scale > 1) {
+            mScaleY = scale;
+        } else {
+            mScaleX = 1 / scale;
+        }
+    }
+
+    private void computeValues() {
+        final float width = mViewWidth;
+        final float height = mViewHeight;
+        // x' = a * x + b * y + c, y' = d * x + e * y + f
+        float a = 1, b = 0, c = 0;
+        float d = 0, e = 1, f = 0;
+        if (width > 0 && height > 0) {
+            if (mRotation == 90) {
+                // Clockwise: the top left corner goes to the bottom left
+                a = 0;
+                b = width / height;
+                d = -height / width;
+                e = 0;
+                f = height;
+            } else if (mRotation == 270) {
+                // Counter-clockwise: the top left corner goes to the top right
+                a = 0;
+                b = -width / height;
+                c = width;
+                d = height / width;
+                e = 0;
+            }
+        }
+        // Then scale around the center of the view
+        final float cx = width / 2;
+        final float cy = height / 2;
+        mValues[0] = mScaleX * a;
+        mValues[1] = mScaleX * b;
+        mValues[2] = mScaleX * (c - cx) + cx;
+        mValues[3] = mScaleY * d;
+        mValues[4] = mScaleY * e;
+        mValues[5] = mScaleY * (f - cy) + cy;
+        mValues[6] = 0;
+        mValues[7] = 0;
+        mValues[8] = 1;
+    }
+
+    /**
+     * @return The horizontal scale of the buffers in the view, on top of the rotation.
+     */
+    float getScaleX() {
+        return mScaleX;
+    }
+
+    /**
+     * @return The vertical scale of the buffers in the view, on top of the rotation.
+     */
+    float getScaleY() {
+        return mScaleY;
+    }
+
+    /**
+     * @return The transform as nine values; owned by this instance and not to be modified.
+     */
+    float[] getValues() {
+        return mValues;
+    }
+
+    /**
+     * Maps a point through the transform in place.
+     *
+     * @param point The x and y coordinates.
+     */
+    void mapPoint(float[] point) {
+        final float x = point[0];
+        final float y = point[1];
+        point[0] = mValues[0] * x + mValues[1] * y + mValues[2];
+        point[1] = mValues[3] * x + mValues[4] * y + mValues[5];
+    }
+
+}
@@ -1,30 +1,94 @@
 package com.google.android.cameraview;
 
 import android.graphics.SurfaceTexture;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.View;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 abstract class PreviewImpl {
 
     interface Callback {
         void onSurfaceChanged();
     }
 
-    private Callback mCallback;
+    /**
+     * Told about every frame that reaches the view, on the main thread.
+     */
+    interface FrameCallback {
+        void onFrameAvailable();
+    }
+
+    private volatile Callback mCallback;
+
+    private FrameCallback mFrameCallback;
+
+    private Handler mCallbackHandler;
 
-    private int mWidth;
-    private int mHeight;
+    /** Whether a surface change has been posted to the callback handler and not run yet. */
+    private final AtomicBoolean mSurfaceChangePending = new AtomicBoolean();
+
+    private final Runnable mDispatchSurfaceChanged = new Runnable() {
+        @Override
+        public void run() {
+            mSurfaceChangePending.set(false);
+            mCallback.onSurfaceChanged();
+        }
+    };
+
+    private final Runnable mConfigureTransform = new Runnable() {
+        @Override
+        public void run() {
+            configureTransform();
+        }
+    };
 
-    protected int mTrueWidth;
-    protected int mTrueHeight;
+    private volatile int mSurfaceGeneration;
+
+    private volatile int mWidth;
+    private volatile int mHeight;
+
+    protected volatile int mTrueWidth;
+    protected volatile int mTrueHeight;
 
     void setCallback(Callback callback) {
         mCallback = callback;
     }
 
+    /**
+     * Makes the {@link Callback} run on the looper of {@code handler} rather than on the thread
+     * the surface changes are reported on.
+     */
+    void setCallbackHandler(Handler handler) {
+        mCallbackHandler = handler;
+    }
+
+    void setFrameCallback(FrameCallback frameCallback) {
+        mFrameCallback = frameCallback;
+    }
+
+    /**
+     * @return The surface of the preview; the same instance until the surface is replaced.
+     */
     abstract Surface getSurface();
 
+    /**
+     * @return A number that changes whenever the preview gets a new surface or loses it.
+     */
+    int getSurfaceGeneration() {
+        return mSurfaceGeneration;
+    }
+
+    /**
+     * Called on the main thread when the surface has been created or destroyed.
+     */
+    protected void nextSurfaceGeneration() {
+        mSurfaceGeneration++;
+    }
+
     abstract View getView();
 
     abstract Class getOutputClass();
@@ -33,8 +97,24 @@ abstract class PreviewImpl {
 
     abstract boolean isReady();
 
+    /**
+     * Tells the {@link Callback} that the surface has changed. Changes reported before the
+     * callback handler gets to run the callback are delivered as one.
+     */
     protected void dispatchSurfaceChanged() {
-        mCallback.onSurfaceChanged();
+        if (mCallbackHandler != null) {
+            if (mSurfaceChangePending.compareAndSet(false, true)) {
+                mCallbackHandler.post(mDispatchSurfaceChanged);
+            }
+        } else {
+            mDispatchSurfaceChanged.run();
+        }
+    }
+
+    protected void dispatchFrameAvailable() {
+        if (mFrameCallback != null) {
+            mFrameCallback.onFrameAvailable();
+        }
     }
 
     SurfaceHolder getSurfaceHolder() {
@@ -61,30 +141,44 @@ abstract class PreviewImpl {
         return mHeight;
     }
 
+    /**
+     * Sets the size of the camera preview buffers and updates the transform of the view to keep
+     * their aspect ratio. May be called from any thread; the view is updated on the main thread.
+     */
     void setTruePreviewSize(int width, int height) {
         this.mTrueWidth = width;
         this.mTrueHeight = height;
 
         if (width != 0 && height != 0) {
-            AspectRatio aspectRatio = AspectRatio.of(width, height);
-            int targetHeight = (int) (getView().getWidth() * aspectRatio.toFloat());
-            float scaleY;
-            if (getView().getHeight() > 0) {
-                scaleY = (float) targetHeight / (float) getView().getHeight();
-            } else {
-                scaleY = 1;
-            }
-
-            if (scaleY > 1) {
-                getView().setScaleX(1);
-                getView().setScaleY(scaleY);
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                configureTransform();
             } else {
-                getView().setScaleX(1 / scaleY);
-                getView().setScaleY(1);
+                getView().post(mConfigureTransform);
             }
         }
     }
 
+    /**
+     * Fits the preview buffers into the view for the current sizes and display orientation.
+     * Called on the main thread.
+     */
+    protected void configureTransform() {
+    }
+
+    /**
+     * @return The horizontal scale applied to the preview content on top of its rotation.
+     */
+    float getContentScaleX() {
+        return 1;
+    }
+
+    /**
+     * @return The vertical scale applied to the preview content on top of its rotation.
+     */
+    float getContentScaleY() {
+        return 1;
+    }
+
     int getTrueWidth() {
         return mTrueWidth;
     }
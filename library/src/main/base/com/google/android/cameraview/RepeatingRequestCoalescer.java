@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+/**
+ * Limits the updates of a repeating preview request to one per frame.
+ *
+ * <p>A control change marks the request as changed through {@link #requestUpdate()}. The first
+ * change after a frame completed is submitted right away; further changes are folded into a
+ * single submission when the next frame completes, see {@link #onFrameCompleted()}.</p>
+ *
+ * <p>Holds nest: changes wait until every {@link #hold()} has been matched by a
+ * {@link #release()} or {@link #resume()}.</p>
+ *
+ * <p>Not thread-safe; used on the thread the capture callbacks are delivered on.</p>
+ */
+class RepeatingRequestCoalescer {
+
+    interface Submitter {
+
+        /**
+         * Builds the repeating request from its current state and submits it. If it cannot be
+         * submitted, the submitter reverts the changes to what the running request has.
+         *
+         * @return {@code false} if the request could not be submitted.
+         */
+        boolean submit();
+
+    }
+
+    private final Submitter mSubmitter;
+
+    private CameraMetrics mMetrics = new CameraMetrics();
+
+    /** Whether there are changes that have not been submitted. */
+    private boolean mDirty;
+
+    /** Whether a frame completed since the last submission. */
+    private boolean mFrameCompleted = true;
+
+    /** The number of holds not released yet, such as for a still capture in progress. */
+    private int mHoldCount;
+
+    /** Whether the repeating request was stopped while held, and has to be submitted again. */
+    private boolean mStopped;
+
+    RepeatingRequestCoalescer(Submitter submitter) {
+        mSubmitter = submitter;
+    }
+
+    void setMetrics(CameraMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * Submits the repeating request now, or with the next frame if one has already been
+     * submitted during this frame.
+     */
+    void requestUpdate() {
+        if (mHoldCount > 0 || !mFrameCompleted) {
+            if (mDirty) {
+                mMetrics.recordRepeatingRequestCoalesced();
+            }
+            mDirty = true;
+            return;
+        }
+        submit();
+    }
+
+    /**
+     * Submits the repeating request right away, without waiting for a frame, for when a request
+     * sent next relies on it running. Changes wait while held as with {@link #requestUpdate()}.
+     *
+     * @return Whether the request was submitted.
+     */
+    boolean submitNow() {
+        if (mHoldCount > 0) {
+            mDirty = true;
+            return false;
+        }
+        return submit();
+    }
+
+    /**
+     * Called when a frame of the repeating request completes; not for one-off captures.
+     */
+    void onFrameCompleted() {
+        mFrameCompleted = true;
+        if (mDirty && mHoldCount == 0) {
+            submit();
+        }
+    }
+
+    /**
+     * Keeps changes from being submitted until this hold is matched by {@link #release()} or
+     * {@link #resume()}.
+     */
+    void hold() {
+        mHoldCount++;
+    }
+
+    /**
+     * Ends a hold for which the repeating request was stopped. Once no other hold is left, the
+     * request is submitted with all the changes made while held.
+     *
+     * @return Whether the request was submitted.
+     */
+    boolean resume() {
+        mStopped = true;
+        return release();
+    }
+
+    /**
+     * Ends a hold for which the repeating request kept running. Once no other hold is left, the
+     * changes made while held, if any, are submitted.
+     *
+     * @return Whether the request was submitted.
+     */
+    boolean release() {
+        if (mHoldCount > 0) {
+            mHoldCount--;
+        }
+        if (mHoldCount > 0 || !(mStopped || mDirty)) {
+            return false;
+        }
+        mStopped = false;
+        return submit();
+    }
+
+    /**
+     * Forgets pending changes, for a new capture session.
+     */
+    void reset() {
+        mDirty = false;
+        mFrameCompleted = true;
+        mHoldCount = 0;
+        mStopped = false;
+    }
+
+    private boolean submit() {
+        // The changes are either in the submitted request or reverted by the submitter
+        mDirty = false;
+        if (!mSubmitter.submit()) {
+            // Nothing new is running, so the next update need not wait for a frame
+            return false;
+        }
+        mFrameCompleted = false;
+        mMetrics.recordRepeatingRequestSubmitted();
+        return true;
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+/**
+ * The sizes supported by one camera and the preview and capture sizes chosen from them.
+ *
+ * <p>Backends keep a plan per camera, so that switching back to a camera reuses what was
+ * collected and chosen for it. The chosen sizes are kept until the common aspect ratios change,
+ * or the capture size is explicitly invalidated. Not thread-safe.</p>
+ */
+class ResolutionPlan {
+
+    private final SizeMap mPreviewSizes = new SizeMap();
+
+    private final SizeMap mPictureSizes = new SizeMap();
+
+    private final AspectRatioIntersection mAspectRatioIntersection =
+            new AspectRatioIntersection();
+
+    /** The common aspect ratios {@link #mPreviewSize} and {@link #mCaptureSize} are chosen for. */
+    private AspectRatioIntersection.Result mRatios;
+
+    private Size mPreviewSize;
+
+    private Size mCaptureSize;
+
+    SizeMap getPreviewSizes() {
+        return mPreviewSizes;
+    }
+
+    SizeMap getPictureSizes() {
+        return mPictureSizes;
+    }
+
+    /**
+     * @return Whether the supported sizes have been collected.
+     */
+    boolean isCollected() {
+        return !mPreviewSizes.isEmpty() && !mPictureSizes.isEmpty();
+    }
+
+    /**
+     * @return The aspect ratios supported by both preview and capture for a view of the given
+     * size, in ascending order.
+     */
+    AspectRatioIntersection.Result getCommonAspectRatios(int viewWidth, int viewHeight) {
+        AspectRatioIntersection.Result ratios = mAspectRatioIntersection.intersect(
+                mPreviewSizes, mPictureSizes, viewWidth, viewHeight);
+        if (ratios != mRatios) {
+            mRatios = ratios;
+            mPreviewSize = null;
+            mCaptureSize = null;
+        }
+        return ratios;
+    }
+
+    /**
+     * @return The largest preview size of the widest common aspect ratio, or of any ratio if
+     * there is no common one; {@code null} if no size has been collected.
+     */
+    Size getPreviewSize(int viewWidth, int viewHeight) {
+        if (!isCollected()) {
+            return null;
+        }
+        AspectRatio ratio = getCommonAspectRatios(viewWidth, viewHeight).last();
+        if (mPreviewSize == null) {
+            mPreviewSize = (ratio != null
+                    ? mPreviewSizes.sizes(ratio) : mPreviewSizes.allSizes()).last();
+        }
+        return mPreviewSize;
+    }
+
+    /**
+     * @param budget The memory budget the capture size has to fit into.
+     * @param images The number of JPEG buffers the backend holds at minimum.
+     * @return The largest picture size of the widest common aspect ratio fitting into
+     * {@code budget}; {@code null} if no size has been collected.
+     * @see CaptureMemoryBudget#choose(Iterable, AspectRatio, int)
+     */
+    Size getCaptureSize(CaptureMemoryBudget budget, int images, int viewWidth, int viewHeight) {
+        if (!isCollected()) {
+            return null;
+        }
+        AspectRatio ratio = getCommonAspectRatios(viewWidth, viewHeight).last();
+        if (mCaptureSize == null) {
+            mCaptureSize = budget.choose(ratio != null
+                    ? mPictureSizes.sizes(ratio) : mPictureSizes.allSizes(), null, images);
+        }
+        return mCaptureSize;
+    }
+
+    /**
+     * Makes the next {@link #getCaptureSize} choose again, against the budget in effect then.
+     */
+    void invalidateCaptureSize() {
+        mCaptureSize = null;
+    }
+
+}
@@ -29,6 +29,8 @@ class SizeMap {
 
     private final ArrayMap<AspectRatio, SortedSet<Size>> mRatios = new ArrayMap<>();
 
+    private int mVersion;
+
     /**
      * Add a new {@link Size} to this collection.
      *
@@ -43,6 +45,7 @@ class SizeMap {
                     return false;
                 } else {
                     sizes.add(size);
+                    mVersion++;
                     return true;
                 }
             }
@@ -51,6 +54,7 @@ class SizeMap {
         SortedSet<Size> sizes = new TreeSet<>();
         sizes.add(size);
         mRatios.put(AspectRatio.of(size.getWidth(), size.getHeight()), sizes);
+        mVersion++;
         return true;
     }
 
@@ -62,12 +66,31 @@ class SizeMap {
         return mRatios.get(ratio);
     }
 
+    /**
+     * @return A new set with the sizes of all the aspect ratios.
+     */
+    SortedSet<Size> allSizes() {
+        SortedSet<Size> sizes = new TreeSet<>();
+        for (SortedSet<Size> ratioSizes : mRatios.values()) {
+            sizes.addAll(ratioSizes);
+        }
+        return sizes;
+    }
+
     void clear() {
         mRatios.clear();
+        mVersion++;
     }
 
     boolean isEmpty() {
         return mRatios.isEmpty();
     }
 
+    /**
+     * @return A number that changes whenever the content of this collection changes.
+     */
+    int version() {
+        return mVersion;
+    }
+
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Receives the callbacks of the backend on the camera thread, keeps the {@link CameraLifecycle}
+ * and the {@link CameraMetrics} up to date, and hands the events to the executor of each
+ * {@link CameraListener}. Also told about the preview frames, for the time to the first frame.
+ *
+ * <p>Free of Android dependencies, so that it can be driven by a fake backend on the JVM.</p>
+ */
+class CallbackBridge implements CameraViewImpl.Callback, PreviewImpl.FrameCallback {
+
+    /**
+     * The clock of the metrics; {@code SystemClock.elapsedRealtime()} in the app.
+     */
+    interface Clock {
+        long now();
+    }
+
+    private final ListenerList<CameraListener> mCameraListeners = new ListenerList<>();
+
+    private final CameraView mCameraView;
+
+    private final CameraLifecycle mLifecycle;
+
+    private final CameraMetrics mMetrics;
+
+    private final Executor mMainExecutor;
+
+    private final Clock mClock;
+
+    private volatile CameraViewImpl mImpl;
+
+    private volatile Size mPreviewSize;
+
+    /**
+     * @param cameraView   Handed to the listeners.
+     * @param mainExecutor Where listeners added without an executor are called.
+     */
+    CallbackBridge(CameraView cameraView, CameraLifecycle lifecycle, CameraMetrics metrics,
+            Executor mainExecutor, Clock clock) {
+        mCameraView = cameraView;
+        mLifecycle = lifecycle;
+        mMetrics = metrics;
+        mMainExecutor = mainExecutor;
+        mClock = clock;
+    }
+
+    /**
+     * Sets the backend the callbacks come from, queried for the preview size when it opens.
+     */
+    void setImpl(CameraViewImpl impl) {
+        mImpl = impl;
+    }
+
+    void add(CameraListener cameraListener, Executor executor) {
+        mCameraListeners.add(cameraListener, executor);
+    }
+
+    void remove(CameraListener cameraListener) {
+        mCameraListeners.remove(cameraListener);
+    }
+
+    Executor getMainExecutor() {
+        return mMainExecutor;
+    }
+
+    Size getPreviewSize() {
+        return mPreviewSize;
+    }
+
+    @Override
+    public void onCameraOpened() {
+        if (!mLifecycle.onOpened()) {
+            return;
+        }
+        mMetrics.markOpened(mClock.now());
+        // Still on the camera thread, where the backend may be queried
+        mPreviewSize = mImpl.getPreviewResolution();
+        mCameraListeners.dispatch(new ListenerList.Event<CameraListener>() {
+            @Override
+            public void dispatch(CameraListener listener) {
+                listener.onCameraOpened(mCameraView);
+            }
+        });
+    }
+
+    @Override
+    public void onPreviewStarted() {
+        mLifecycle.onPreviewStarted();
+        mMetrics.markPreviewStarted(mClock.now());
+    }
+
+    @Override
+    public void onCameraClosed() {
+        if (!mLifecycle.onClosed()) {
+            return;
+        }
+        dispatchClosed();
+    }
+
+    @Override
+    public void onCameraFailed() {
+        if (!mLifecycle.onFailed()) {
+            return;
+        }
+        dispatchClosed();
+    }
+
+    private void dispatchClosed() {
+        mPreviewSize = null;
+        mCameraListeners.dispatch(new ListenerList.Event<CameraListener>() {
+            @Override
+            public void dispatch(CameraListener listener) {
+                listener.onCameraClosed(mCameraView);
+            }
+        });
+    }
+
+    @Override
+    public void onPictureTaken(final CameraData cameraData) {
+        mCameraListeners.dispatch(new ListenerList.Event<CameraListener>() {
+            @Override
+            public void dispatch(CameraListener listener) {
+                listener.onPictureTaken(mCameraView, cameraData);
+            }
+        });
+    }
+
+    /**
+     * Called on the main thread for every frame that reaches the view.
+     */
+    @Override
+    public void onFrameAvailable() {
+        if (!mMetrics.markFrame(mClock.now())) {
+            return;
+        }
+        final long timeToFirstFrameMillis = mMetrics.getTimeToFirstFrameMillis();
+        mCameraListeners.dispatch(new ListenerList.Event<CameraListener>() {
+            @Override
+            public void dispatch(CameraListener listener) {
+                listener.onFirstPreviewFrame(mCameraView, timeToFirstFrameMillis);
+            }
+        });
+    }
+
+}
@@ -11,4 +11,14 @@ public abstract class CameraListener {
 
     }
 
+    /**
+     * Called when the first preview frame reaches the view after the camera was started, its
+     * facing switched or its preview reconfigured. The phases are available from
+     * {@link CameraView#getMetrics()}.
+     *
+     * @param timeToFirstFrameMillis The time from the request to the first frame.
+     */
+    public void onFirstPreviewFrame(CameraView cameraView, long timeToFirstFrameMillis) {
+    }
+
 }
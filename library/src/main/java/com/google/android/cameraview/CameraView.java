@@ -18,29 +18,36 @@ package com.google.android.cameraview;
 
 import static com.google.android.cameraview.Constants.FACING_BACK;
 import static com.google.android.cameraview.Constants.FLASH_AUTO;
-import static com.google.android.cameraview.Constants.FLASH_OFF;
 
+import android.Manifest;
 import android.annotation.TargetApi;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
-import android.graphics.Rect;
 import android.hardware.Camera;
 import android.os.Build;
+import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Looper;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.support.v4.content.ContextCompat;
 import android.support.v4.os.ParcelableCompat;
 import android.support.v4.os.ParcelableCompatCreatorCallbacks;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
 import android.widget.FrameLayout;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 public class CameraView extends FrameLayout {
 
@@ -51,12 +58,64 @@ public class CameraView extends FrameLayout {
         static final int screenHeight = Resources.getSystem().getDisplayMetrics().heightPixels;
     }
 
-    private CameraViewImpl mImpl;
+    /** How long {@link #prewarm(Context, int)} holds a camera for a view to take. */
+    public static final long DEFAULT_PREWARM_TIMEOUT_MILLIS = 3000;
+
+    /**
+     * Shared by all instances and {@link #prewarm(Context, int)}, so that a prewarmed camera is
+     * opened on the same looper the view drives it from.
+     */
+    private static HandlerThread sCameraThread;
+
+    private static Handler sCameraHandler;
+
+    /** Only touched on the camera thread, except for reading plain state. */
+    private volatile CameraViewImpl mImpl;
     private final CallbackBridge mCallbacks;
     private boolean mAdjustViewBounds;
+    /** Whether to measure again once the camera is open and the preview size known. */
+    private boolean mRequestLayoutOnOpen;
     private final DisplayOrientationDetector mDisplayOrientationDetector;
     private PreviewImpl preview;
-    private HandlerThread handlerThread;
+    private final Handler mCameraHandler;
+    private final CaptureMemoryBudget mCaptureMemoryBudget = new CaptureMemoryBudget();
+    private final CameraMetrics mMetrics = new CameraMetrics();
+    private final CameraLifecycle mLifecycle;
+    private final TouchToFocus mTouchToFocus = new TouchToFocus();
+    /** When {@link #start()} was last called, for the time to the first frame. */
+    private volatile long mStartRequestedMillis;
+    private volatile boolean mPreviewDuringCapture = true;
+    private volatile ConvergenceTimeout mFocusTimeout = ConvergenceTimeout.DEFAULT;
+    private volatile ConvergenceTimeout mExposureTimeout = ConvergenceTimeout.DEFAULT;
+    /**
+     * The facing and the flash last requested, for the toggles to follow from one another before
+     * the camera thread has caught up.
+     */
+    @Facing
+    private int mRequestedFacing = FACING_BACK;
+    @Flash
+    private int mRequestedFlash = FLASH_AUTO;
+
+    private final ComponentCallbacks2 mComponentCallbacks = new ComponentCallbacks2() {
+
+        @Override
+        public void onTrimMemory(int level) {
+            // UI_HIDDEN only means the app went to background; everything else is pressure
+            if (level >= TRIM_MEMORY_RUNNING_LOW && level != TRIM_MEMORY_UI_HIDDEN) {
+                mCaptureMemoryBudget.downgrade();
+            }
+        }
+
+        @Override
+        public void onLowMemory() {
+            mCaptureMemoryBudget.downgrade();
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+    };
 
     public CameraView(Context context) {
         this(context, null);
@@ -70,16 +129,78 @@ public class CameraView extends FrameLayout {
     public CameraView(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
 
-        handlerThread = new HandlerThread("camera_thread");
-        handlerThread.start();
+        mCameraHandler = getCameraHandler();
+        mLifecycle = new CameraLifecycle(new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                runOnCameraThread(command);
+            }
+        }, new CameraLifecycle.Backend() {
+            @Override
+            public boolean start() {
+                mMetrics.beginFirstFrame(mStartRequestedMillis);
+                if (mImpl.start()) {
+                    return true;
+                }
+                if (mImpl instanceof Camera1) {
+                    return false;
+                }
+                // Camera2 uses legacy hardware layer; fall back to Camera1
+                mImpl = new Camera1(mCallbacks, preview);
+                mCallbacks.setImpl(mImpl);
+                mImpl.setCaptureMemoryBudget(mCaptureMemoryBudget);
+                mImpl.setMetrics(mMetrics);
+                mImpl.setCameraHandler(mCameraHandler);
+                mImpl.setPreviewDuringCapture(mPreviewDuringCapture);
+                mImpl.setConvergenceTimeouts(mFocusTimeout, mExposureTimeout);
+                return mImpl.start();
+            }
+
+            @Override
+            public void stop() {
+                mImpl.stop();
+            }
+        });
 
         preview = createPreviewImpl(context);
-        mCallbacks = new CallbackBridge();
+        preview.setCallbackHandler(mCameraHandler);
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        mCallbacks = new CallbackBridge(this, mLifecycle, mMetrics, new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                mainHandler.post(command);
+            }
+        }, new CallbackBridge.Clock() {
+            @Override
+            public long now() {
+                return SystemClock.elapsedRealtime();
+            }
+        });
+        // Added first, so that the layout is requested before the other listeners hear of it
+        mCallbacks.add(new CameraListener() {
+            @Override
+            public void onCameraOpened(CameraView cameraView) {
+                if (mRequestLayoutOnOpen) {
+                    mRequestLayoutOnOpen = false;
+                    requestLayout();
+                }
+            }
+        }, mCallbacks.getMainExecutor());
+        preview.setFrameCallback(mCallbacks);
 //        if (Build.VERSION.SDK_INT < 23) {
             mImpl = new Camera1(mCallbacks, preview);
 //        } else {
 //            mImpl = new Camera2Api23(mCallbacks, preview, context);
 //        }
+        mCallbacks.setImpl(mImpl);
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        mCaptureMemoryBudget.setMemoryClass(activityManager.getMemoryClass());
+        mImpl.setCaptureMemoryBudget(mCaptureMemoryBudget);
+        mImpl.setMetrics(mMetrics);
+        mImpl.setCameraHandler(mCameraHandler);
+        mImpl.setPreviewDuringCapture(mPreviewDuringCapture);
+        mImpl.setConvergenceTimeouts(mFocusTimeout, mExposureTimeout);
 
         TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.CameraView,
                 defStyleAttr,
@@ -94,8 +215,13 @@ public class CameraView extends FrameLayout {
 
         mDisplayOrientationDetector = new DisplayOrientationDetector(context) {
             @Override
-            public void onDisplayOrientationChanged(int displayOrientation) {
-                mImpl.setDisplayOrientation(displayOrientation);
+            public void onDisplayOrientationChanged(final int displayOrientation) {
+                runOnCameraThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        mImpl.setDisplayOrientation(displayOrientation);
+                    }
+                });
                 preview.setDisplayOrientation(displayOrientation);
             }
         };
@@ -115,26 +241,34 @@ public class CameraView extends FrameLayout {
             setOnTouchListener(new OnTouchListener() {
                 @Override
                 public boolean onTouch(View v, MotionEvent event) {
-                    int size = Math.min(getHeight(), getWidth());
-                    float radius = size / 2.0f;
-                    float delta = (getHeight() - getWidth()) / 2;
-                    float eX = event.getX() - radius;
-                    float eY = event.getY() - radius - delta;
-                    float vector = (float) Math.sqrt(eX * eX + eY * eY);
-                    if (vector < radius) {
-                        int rectXMiddle = (int) (1000 * eX / (getWidth() / 2));
-                        int rectYMiddle = (int) (1000 * eX / (getHeight() / 2));
-                        List<Camera.Area> meteringAreas = new ArrayList<Camera.Area>();
-                        int halfAreaSide = 50;
-                        Rect areaRect = new Rect(Math.max(rectXMiddle - halfAreaSide, -1000),
-                                Math.max(rectYMiddle - halfAreaSide, -1000),
-                                Math.min(rectXMiddle + halfAreaSide, 1000),
-                                Math.min(rectYMiddle + halfAreaSide, 1000));
-                        meteringAreas.add(new Camera.Area(areaRect, 1000));
-                        mImpl.setMeteringAndFocusAreas(meteringAreas);
-                        Log.d(TAG,
-                                event.getX() + " " + event.getY() + " size:" + getWidth() + "x"
-                                        + getHeight() + " Rect: " + areaRect);
+                    if (event.getActionMasked() != MotionEvent.ACTION_DOWN) {
+                        return false;
+                    }
+                    int sensorOrientation = mImpl.getSensorOrientation();
+                    if (sensorOrientation < 0) {
+                        return false;
+                    }
+                    View view = preview.getView();
+                    int facing = mImpl.getFacing();
+                    final List<Camera.Area> meteringAreas = mTouchToFocus.onTouch(
+                            event.getX() - view.getLeft(), event.getY() - view.getTop(),
+                            view.getWidth(), view.getHeight(),
+                            preview.getContentScaleX(), preview.getContentScaleY(),
+                            CameraInfoRegistry.calculateDisplayOrientation(facing,
+                                    sensorOrientation,
+                                    mDisplayOrientationDetector.getLastKnownDisplayOrientation()),
+                            facing == Constants.FACING_FRONT);
+                    if (meteringAreas != null) {
+                        runOnCameraThread(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    mImpl.setMeteringAndFocusAreas(meteringAreas);
+                                } finally {
+                                    mTouchToFocus.onApplied();
+                                }
+                            }
+                        });
                     }
                     return false;
                 }
@@ -147,28 +281,33 @@ public class CameraView extends FrameLayout {
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
         mDisplayOrientationDetector.enable(ViewCompat2.getDisplay(this));
+        getContext().getApplicationContext().registerComponentCallbacks(mComponentCallbacks);
     }
 
     @Override
     protected void onDetachedFromWindow() {
+        getContext().getApplicationContext().unregisterComponentCallbacks(mComponentCallbacks);
         mDisplayOrientationDetector.disable();
         super.onDetachedFromWindow();
     }
 
+    /**
+     * @return The preview size of the open camera, or {@code null} if it is not open yet.
+     */
     public Size getPreviewSize() {
-        return mImpl != null ? mImpl.getPreviewResolution() : null;
+        return mCallbacks.getPreviewSize();
     }
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         if (mAdjustViewBounds) {
-            if (!isCameraOpened()) {
-                mCallbacks.reserveRequestLayoutOnOpen();
+            Size previewSize = getPreviewSize();
+            if (previewSize == null) {
+                mRequestLayoutOnOpen = true;
                 super.onMeasure(widthMeasureSpec, heightMeasureSpec);
                 return;
             }
 
-            Size previewSize = getPreviewSize();
             if (getLayoutParams().width == LayoutParams.WRAP_CONTENT) {
                 int height = MeasureSpec.getSize(heightMeasureSpec);
                 float ratio = (float) height / (float) previewSize.getWidth();
@@ -192,24 +331,89 @@ public class CameraView extends FrameLayout {
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
     }
 
+    /**
+     * Opens the camera and starts the preview. This returns immediately; the camera is opened on
+     * a background thread and {@link CameraListener#onCameraOpened(CameraView)} is called once
+     * it is ready. Calls made in the meantime are run after the camera has been opened.
+     *
+     * <p>A {@link #stop()} before the camera has been opened cancels the start, and a
+     * {@link #stop()} immediately followed by a start leaves an open camera open.</p>
+     */
     public void start() {
-        if (!mImpl.start()) {
-            // Camera2 uses legacy hardware layer; fall back to Camera1
-            mImpl = new Camera1(mCallbacks, createPreviewImpl(getContext()));
-            mImpl.start();
-        }
+        mStartRequestedMillis = SystemClock.elapsedRealtime();
+        mLifecycle.requestStart();
     }
 
+    /**
+     * Closes the camera. This returns immediately; the camera is closed on a background thread
+     * and {@link CameraListener#onCameraClosed(CameraView)} is called once it is.
+     */
     public void stop() {
-        mImpl.stop();
+        mLifecycle.requestStop();
+    }
+
+    /**
+     * Gets the camera ready before a {@link CameraView} is created, to shorten the time to the
+     * first preview frame. The camera with {@code facing} is looked up and, if the camera
+     * permission is granted, opened in the background. The first {@link CameraView} started with
+     * the same facing within {@link #DEFAULT_PREWARM_TIMEOUT_MILLIS} takes it over; otherwise it
+     * is released.
+     */
+    public static void prewarm(Context context, @Facing int facing) {
+        prewarm(context, facing, DEFAULT_PREWARM_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Same as {@link #prewarm(Context, int)}, releasing the camera after {@code timeoutMillis}.
+     */
+    public static void prewarm(Context context, @Facing final int facing,
+            final long timeoutMillis) {
+        final boolean open = ContextCompat.checkSelfPermission(context, Manifest.permission.CAMERA)
+                == PackageManager.PERMISSION_GRANTED;
+        final Handler handler = getCameraHandler();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                CameraPrewarm.prewarm(handler, facing, open, timeoutMillis);
+            }
+        });
+    }
+
+    private static synchronized Handler getCameraHandler() {
+        if (sCameraHandler == null) {
+            sCameraThread = new HandlerThread("camera_thread");
+            sCameraThread.start();
+            sCameraHandler = new Handler(sCameraThread.getLooper());
+        }
+        return sCameraHandler;
+    }
+
+    /**
+     * Runs {@code task} on the camera thread. Tasks run one at a time in the order they were
+     * posted, so a call made while the camera is opening waits for the open to complete.
+     */
+    private void runOnCameraThread(Runnable task) {
+        mCameraHandler.post(task);
     }
 
     public boolean isCameraOpened() {
         return mImpl.isCameraOpened();
     }
 
+    /**
+     * Adds a listener called on the main thread.
+     */
     public void addCallback(@NonNull CameraListener cameraListener) {
-        mCallbacks.add(cameraListener);
+        mCallbacks.add(cameraListener, mCallbacks.getMainExecutor());
+    }
+
+    /**
+     * Adds a listener called on {@code executor}. Each listener is handed the events on its own
+     * executor, so a slow listener delays neither the others nor the camera. An executor that
+     * runs tasks in place calls the listener on the camera thread, which it then must not block.
+     */
+    public void addCallback(@NonNull CameraListener cameraListener, @NonNull Executor executor) {
+        mCallbacks.add(cameraListener, executor);
     }
 
     public void removeCallback(@NonNull CameraListener cameraListener) {
@@ -228,8 +432,93 @@ public class CameraView extends FrameLayout {
     }
 
 
-    public void setFacing(@Facing int facing) {
-        mImpl.setFacing(facing);
+    /**
+     * Caps the still capture size so that a picture, decoded through
+     * {@link CameraData#getBitmap()}, fits into the given amount of memory. Memory pressure
+     * reported through {@link ComponentCallbacks2#onTrimMemory(int)} lowers the budget further.
+     * Takes effect on the next {@link #start()}.
+     *
+     * @param bytes The budget in bytes, {@link Constants#CAPTURE_MEMORY_BUDGET_UNLIMITED} (the
+     *              default) or {@link Constants#CAPTURE_MEMORY_BUDGET_AUTO} to derive it from
+     *              {@link ActivityManager#getMemoryClass()}.
+     */
+    public void setCaptureMemoryBudget(long bytes) {
+        mCaptureMemoryBudget.setBudget(bytes);
+    }
+
+    public long getCaptureMemoryBudget() {
+        return mCaptureMemoryBudget.getBudget();
+    }
+
+    /**
+     * Keeps the preview running while a still picture is captured, so that it does not freeze and
+     * the next picture can follow sooner. Only cameras of the FULL hardware level or above do
+     * this; the others stop the preview for the capture regardless. On by default.
+     */
+    public void setPreviewDuringCapture(final boolean previewDuringCapture) {
+        mPreviewDuringCapture = previewDuringCapture;
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                mImpl.setPreviewDuringCapture(previewDuringCapture);
+            }
+        });
+    }
+
+    public boolean getPreviewDuringCapture() {
+        return mPreviewDuringCapture;
+    }
+
+    /**
+     * Bounds how long {@link #takePicture()} waits for auto-focus to lock before taking the
+     * picture with the focus there is. Camera1 only honors the time limit. Defaults to 30 frames
+     * or one second.
+     *
+     * @param maxFrames The number of preview frames to wait at most, or {@code 0} for no limit.
+     * @param maxMillis The time to wait at most, or {@code 0} for no limit.
+     */
+    public void setFocusTimeout(int maxFrames, long maxMillis) {
+        mFocusTimeout = new ConvergenceTimeout(maxFrames, maxMillis);
+        applyConvergenceTimeouts();
+    }
+
+    /**
+     * Bounds how long {@link #takePicture()} waits for the precapture metering to converge
+     * exposure, such as for the flash, on Camera2. Defaults to 30 frames or one second.
+     *
+     * @param maxFrames The number of preview frames to wait at most, or {@code 0} for no limit.
+     * @param maxMillis The time to wait at most, or {@code 0} for no limit.
+     */
+    public void setExposureTimeout(int maxFrames, long maxMillis) {
+        mExposureTimeout = new ConvergenceTimeout(maxFrames, maxMillis);
+        applyConvergenceTimeouts();
+    }
+
+    private void applyConvergenceTimeouts() {
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                mImpl.setConvergenceTimeouts(mFocusTimeout, mExposureTimeout);
+            }
+        });
+    }
+
+    /**
+     * @return The timings measured by the camera, such as the time to the first preview frame and
+     * how long facing switches take.
+     */
+    public CameraMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    public void setFacing(@Facing final int facing) {
+        mRequestedFacing = facing;
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                mImpl.setFacing(facing);
+            }
+        });
     }
 
     @Facing
@@ -238,22 +527,37 @@ public class CameraView extends FrameLayout {
         return mImpl.getFacing();
     }
 
+    /**
+     * @return The facing the camera is switched to.
+     */
     @Facing
     public int toggleFacing() {
-        if (mImpl == null) return FACING_BACK;
-        return mImpl.toggleFacing();
+        int facing = mRequestedFacing == FACING_BACK ? Constants.FACING_FRONT : FACING_BACK;
+        setFacing(facing);
+        return facing;
     }
 
-    public void setAutoFocus(boolean autoFocus) {
-        mImpl.setAutoFocus(autoFocus);
+    public void setAutoFocus(final boolean autoFocus) {
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                mImpl.setAutoFocus(autoFocus);
+            }
+        });
     }
 
     public boolean getAutoFocus() {
         return mImpl.getAutoFocus();
     }
 
-    public void setFlash(@Flash int flash) {
-        mImpl.setFlash(flash);
+    public void setFlash(@Flash final int flash) {
+        mRequestedFlash = flash;
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                mImpl.setFlash(flash);
+            }
+        });
     }
 
     @Flash
@@ -263,67 +567,108 @@ public class CameraView extends FrameLayout {
     }
 
 
+    /**
+     * @return The flash mode requested; the camera falls back to {@link Constants#FLASH_OFF} if
+     * it does not support it.
+     */
     @Flash
     public int toggleFlash() {
-        if (mImpl == null) return FLASH_OFF;
-        return mImpl.toggleFlash();
+        int flash = CameraViewImpl.nextFlash(mRequestedFlash);
+        setFlash(flash);
+        return flash;
     }
 
 
-    public void takePicture() {
-        mImpl.takePicture();
+    /**
+     * Starts a batch of setting changes that {@link Editor#apply()} commits at once. On Camera1,
+     * the changes are compared with the current camera parameters and written in a single call.
+     * <pre>
+     * cameraView.edit()
+     *         .flash(Constants.FLASH_AUTO)
+     *         .autoFocus(true)
+     *         .apply();
+     * </pre>
+     */
+    public Editor edit() {
+        return new Editor();
     }
 
-    private class CallbackBridge implements CameraViewImpl.Callback {
+    /**
+     * Takes a picture once the camera is open; the result is delivered through
+     * {@link CameraListener#onPictureTaken(CameraView, CameraData)}.
+     */
+    public void takePicture() {
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                mImpl.takePicture();
+            }
+        });
+    }
 
-        private final ArrayList<CameraListener> mCameraListeners = new ArrayList<>();
+    /**
+     * Setting changes staged by {@link #edit()}.
+     */
+    public final class Editor {
 
-        private boolean mRequestLayoutOnOpen;
+        private CameraSettingsEdit mEdit = new CameraSettingsEdit();
 
-        CallbackBridge() {
+        private Editor() {
         }
 
-        public void add(CameraListener cameraListener) {
-            mCameraListeners.add(cameraListener);
+        public Editor flash(@Flash int flash) {
+            mEdit.setFlash(flash);
+            return this;
         }
 
-        public void remove(CameraListener cameraListener) {
-            mCameraListeners.remove(cameraListener);
+        public Editor autoFocus(boolean autoFocus) {
+            mEdit.setAutoFocus(autoFocus);
+            return this;
         }
 
-        @Override
-        public void onCameraOpened() {
-            if (mRequestLayoutOnOpen) {
-                mRequestLayoutOnOpen = false;
-                requestLayout();
+        /**
+         * Sets the areas to meter and focus on, and starts focusing on them. The camera uses as
+         * many of them as it supports, in order, and ignores the rest.
+         *
+         * @throws IllegalArgumentException If {@code meteringAreas} is empty or has a
+         *                                  {@code null} area.
+         */
+        @SuppressWarnings("deprecation")
+        public Editor meteringAreas(@NonNull List<Camera.Area> meteringAreas) {
+            if (meteringAreas.isEmpty()) {
+                throw new IllegalArgumentException("No metering areas");
             }
-            for (CameraListener cameraListener : mCameraListeners) {
-                cameraListener.onCameraOpened(CameraView.this);
+            for (Camera.Area area : meteringAreas) {
+                if (area == null || area.rect == null) {
+                    throw new IllegalArgumentException("Null metering area");
+                }
             }
+            // Copied, so that the list checked is the one applied
+            mEdit.setMeteringAreas(new ArrayList<>(meteringAreas));
+            return this;
         }
 
-        @Override
-        public void onCameraClosed() {
-            for (CameraListener cameraListener : mCameraListeners) {
-                cameraListener.onCameraClosed(CameraView.this);
+        /**
+         * Commits the staged changes on the camera thread. The editor can be reused for another
+         * batch afterwards.
+         */
+        public void apply() {
+            final CameraSettingsEdit edit = mEdit;
+            mEdit = new CameraSettingsEdit();
+            if (edit.isEmpty()) {
+                return;
             }
-        }
-
-        @Override
-        public void onCameraFailed() {
-
-        }
-
-        @Override
-        public void onPictureTaken(CameraData cameraData) {
-            for (CameraListener cameraListener : mCameraListeners) {
-                cameraListener.onPictureTaken(CameraView.this, cameraData);
+            if (edit.hasFlash()) {
+                mRequestedFlash = edit.getFlash();
             }
+            runOnCameraThread(new Runnable() {
+                @Override
+                public void run() {
+                    mImpl.apply(edit);
+                }
+            });
         }
 
-        public void reserveRequestLayoutOnOpen() {
-            mRequestLayoutOnOpen = true;
-        }
     }
 
     protected static class SavedState extends BaseSavedState {
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.hardware.Camera;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Turns a tap on the preview into a metering and focus area, in the coordinates of
+ * {@link Camera.Area}.
+ *
+ * <p>The transform from view to camera coordinates is cached and only rebuilt when the size or
+ * scale of the preview, the display orientation or the facing changes. The area handed out is
+ * the same instance every time; a tap is dropped while the previous area has not been applied
+ * yet, see {@link #onApplied()}, so that a tap allocates nothing.</p>
+ *
+ * <p>{@link #onTouch} is called on the main thread, {@link #onApplied()} on any thread.</p>
+ */
+class TouchToFocus {
+
+    /** Half the side of the area around the tap, in area coordinates. */
+    private static final int HALF_AREA_SIDE = 50;
+
+    private static final int AREA_WEIGHT = 1000;
+
+    private final Matrix mCameraToView = new Matrix();
+
+    private final Matrix mViewToCamera = new Matrix();
+
+    private final float[] mPoint = new float[2];
+
+    private final Camera.Area mArea = new Camera.Area(new Rect(), AREA_WEIGHT);
+
+    private final List<Camera.Area> mAreas = Collections.singletonList(mArea);
+
+    /** Whether an area has been handed out and not applied yet. */
+    private final AtomicBoolean mPending = new AtomicBoolean();
+
+    // What mViewToCamera was built for; a width of -1 means nothing yet
+    private int mWidth = -1;
+    private int mHeight;
+    private float mScaleX;
+    private float mScaleY;
+    private int mDisplayOrientation;
+    private boolean mMirrored;
+
+    /**
+     * @param x                  The tap, relative to the preview view.
+     * @param y                  The tap, relative to the preview view.
+     * @param width              The width of the preview view.
+     * @param height             The height of the preview view.
+     * @param scaleX             The scale of the preview content around the view center.
+     * @param scaleY             The scale of the preview content around the view center.
+     * @param displayOrientation The rotation of the preview, as passed to
+     *                           {@link Camera#setDisplayOrientation(int)}.
+     * @param mirrored           Whether the preview is mirrored, as for front cameras.
+     * @return The area around the tap, or {@code null} if the tap is outside of the focus circle
+     * or the previous area is still pending. The list stays valid until {@link #onApplied()}.
+     */
+    List<Camera.Area> onTouch(float x, float y, int width, int height, float scaleX,
+            float scaleY, int displayOrientation, boolean mirrored) {
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        // Only taps within the circle inscribed in the view focus
+        float radius = Math.min(width, height) / 2f;
+        float dx = x - width / 2f;
+        float dy = y - height / 2f;
+        if (dx * dx + dy * dy >= radius * radius) {
+            return null;
+        }
+        if (!mPending.compareAndSet(false, true)) {
+            return null;
+        }
+        if (width != mWidth || height != mHeight || scaleX != mScaleX || scaleY != mScaleY
+                || displayOrientation != mDisplayOrientation || mirrored != mMirrored) {
+            buildTransform(width, height, scaleX, scaleY, displayOrientation, mirrored);
+        }
+        mPoint[0] = x;
+        mPoint[1] = y;
+        mViewToCamera.mapPoints(mPoint);
+        int centerX = Math.round(mPoint[0]);
+        int centerY = Math.round(mPoint[1]);
+        mArea.rect.set(
+                Math.max(centerX - HALF_AREA_SIDE, MeteringRegions.AREA_MIN),
+                Math.max(centerY - HALF_AREA_SIDE, MeteringRegions.AREA_MIN),
+                Math.min(centerX + HALF_AREA_SIDE, MeteringRegions.AREA_MAX),
+                Math.min(centerY + HALF_AREA_SIDE, MeteringRegions.AREA_MAX));
+        return mAreas;
+    }
+
+    /**
+     * Called once the area from {@link #onTouch} has been applied, or dropped, so that the
+     * next tap can reuse it.
+     */
+    void onApplied() {
+        mPending.set(false);
+    }
+
+    private void buildTransform(int width, int height, float scaleX, float scaleY,
+            int displayOrientation, boolean mirrored) {
+        // From area coordinates to the view, as the camera draws the preview
+        mCameraToView.setScale(mirrored ? -1 : 1, 1);
+        mCameraToView.postRotate(displayOrientation);
+        mCameraToView.postScale(width / 2000f, height / 2000f);
+        mCameraToView.postTranslate(width / 2f, height / 2f);
+        // The preview content is scaled around the view center to keep the aspect ratio
+        mCameraToView.postScale(scaleX, scaleY, width / 2f, height / 2f);
+        mCameraToView.invert(mViewToCamera);
+        mWidth = width;
+        mHeight = height;
+        mScaleX = scaleX;
+        mScaleY = scaleY;
+        mDisplayOrientation = displayOrientation;
+        mMirrored = mirrored;
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class AspectRatioIntersectionTest {
+
+    private static SizeMap map(int... dimensions) {
+        SizeMap map = new SizeMap();
+        for (int i = 0; i < dimensions.length; i += 2) {
+            map.add(new Size(dimensions[i], dimensions[i + 1]));
+        }
+        return map;
+    }
+
+    @Test
+    public void testIntersect() {
+        SizeMap preview = map(1920, 1080, 1440, 1080, 640, 480, 720, 720);
+        SizeMap picture = map(4000, 3000, 3840, 2160, 1920, 1080);
+        AspectRatioIntersection.Result result =
+                new AspectRatioIntersection().intersect(preview, picture, 0, 0);
+        assertThat(result.size(), is(2));
+        assertThat(result.get(0), is(AspectRatio.of(4, 3)));
+        assertThat(result.last(), is(AspectRatio.of(16, 9)));
+        assertThat(result.contains(AspectRatio.of(1, 1)), is(false));
+    }
+
+    @Test
+    public void testViewSize_orientationIndependent() {
+        SizeMap preview = map(1920, 1080, 1280, 960);
+        SizeMap picture = map(4000, 3000, 3840, 2160);
+        AspectRatioIntersection intersection = new AspectRatioIntersection();
+        AspectRatioIntersection.Result portrait = intersection.intersect(preview, picture,
+                1080, 1920);
+        assertThat(portrait.size(), is(1));
+        assertThat(portrait.last(), is(AspectRatio.of(16, 9)));
+        AspectRatioIntersection.Result landscape = intersection.intersect(preview, picture,
+                1920, 1080);
+        assertThat(landscape.size(), is(1));
+        assertThat(landscape.last(), is(AspectRatio.of(16, 9)));
+    }
+
+    @Test
+    public void testEmpty() {
+        AspectRatioIntersection.Result result = new AspectRatioIntersection().intersect(
+                map(640, 480), map(1920, 1080), 0, 0);
+        assertThat(result.isEmpty(), is(true));
+        assertThat(result.last(), is(nullValue()));
+    }
+
+    @Test
+    public void testCached() {
+        SizeMap preview = map(1920, 1080, 1440, 1080);
+        SizeMap picture = map(4000, 3000, 3840, 2160);
+        AspectRatioIntersection intersection = new AspectRatioIntersection();
+        AspectRatioIntersection.Result first = intersection.intersect(preview, picture, 0, 0);
+        assertThat(intersection.intersect(preview, picture, 0, 0), is(sameInstance(first)));
+        assertThat(intersection.intersect(preview, picture, 1, 1), is(not(sameInstance(first))));
+        AspectRatioIntersection.Result second = intersection.intersect(preview, picture, 1, 1);
+        picture.add(new Size(720, 720));
+        preview.add(new Size(720, 720));
+        AspectRatioIntersection.Result third = intersection.intersect(preview, picture, 1, 1);
+        assertThat(third, is(not(sameInstance(second))));
+        assertThat(third.size(), is(3));
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static com.google.android.cameraview.CameraInfoRegistry.calculateDisplayOrientation;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class CameraInfoRegistryTest {
+
+    @Test
+    public void testDisplayOrientation_back() {
+        assertThat(calculateDisplayOrientation(Constants.FACING_BACK, 90, 0), is(90));
+        assertThat(calculateDisplayOrientation(Constants.FACING_BACK, 90, 90), is(0));
+        assertThat(calculateDisplayOrientation(Constants.FACING_BACK, 90, 180), is(270));
+        assertThat(calculateDisplayOrientation(Constants.FACING_BACK, 90, 270), is(180));
+    }
+
+    @Test
+    public void testDisplayOrientation_front() {
+        assertThat(calculateDisplayOrientation(Constants.FACING_FRONT, 270, 0), is(90));
+        assertThat(calculateDisplayOrientation(Constants.FACING_FRONT, 270, 90), is(0));
+        assertThat(calculateDisplayOrientation(Constants.FACING_FRONT, 270, 180), is(270));
+        assertThat(calculateDisplayOrientation(Constants.FACING_FRONT, 270, 270), is(180));
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CameraLifecycleTest {
+
+    /**
+     * Opens either within {@link #start()}, like Camera1, or when {@link #completeOpen()} is
+     * called, like Camera2.
+     */
+    private static class FakeBackend implements CameraLifecycle.Backend {
+
+        CameraLifecycle lifecycle;
+        boolean async;
+        boolean fail;
+        boolean opened;
+        int starts;
+        int stops;
+        int openedEvents;
+        int closedEvents;
+
+        @Override
+        public boolean start() {
+            starts++;
+            if (fail) {
+                return false;
+            }
+            if (!async) {
+                completeOpen();
+            }
+            return true;
+        }
+
+        @Override
+        public void stop() {
+            stops++;
+            if (opened) {
+                close();
+            }
+        }
+
+        void completeOpen() {
+            opened = true;
+            if (lifecycle.onOpened()) {
+                openedEvents++;
+            }
+            lifecycle.onPreviewStarted();
+        }
+
+        void close() {
+            opened = false;
+            if (lifecycle.onClosed()) {
+                closedEvents++;
+            }
+        }
+
+    }
+
+    private ManualExecutor mExecutor;
+    private FakeBackend mBackend;
+    private CameraLifecycle mLifecycle;
+
+    @Before
+    public void setUp() {
+        mExecutor = new ManualExecutor();
+        mBackend = new FakeBackend();
+        mLifecycle = new CameraLifecycle(mExecutor, mBackend);
+        mBackend.lifecycle = mLifecycle;
+    }
+
+    @Test
+    public void testStartStop() {
+        mLifecycle.requestStart();
+        mExecutor.runAll();
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_PREVIEWING));
+        assertThat(mBackend.openedEvents, is(1));
+        mLifecycle.requestStop();
+        mExecutor.runAll();
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_CLOSED));
+        assertThat(mBackend.closedEvents, is(1));
+    }
+
+    @Test
+    public void testStartStop_coalesced() {
+        mLifecycle.requestStart();
+        mLifecycle.requestStop();
+        mLifecycle.requestStart();
+        mLifecycle.requestStop();
+        assertThat(mExecutor.pending(), is(1));
+        mExecutor.runAll();
+        assertThat(mBackend.starts, is(0));
+        assertThat(mBackend.stops, is(0));
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_CLOSED));
+    }
+
+    @Test
+    public void testStopStart_keepsCameraOpen() {
+        mLifecycle.requestStart();
+        mExecutor.runAll();
+        mLifecycle.requestStop();
+        mLifecycle.requestStart();
+        mExecutor.runAll();
+        assertThat(mBackend.starts, is(1));
+        assertThat(mBackend.stops, is(0));
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_PREVIEWING));
+    }
+
+    @Test
+    public void testStopWhileOpening() {
+        mBackend.async = true;
+        mLifecycle.requestStart();
+        mExecutor.runAll();
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_OPENING));
+        mLifecycle.requestStop();
+        mExecutor.runAll();
+        assertThat(mBackend.stops, is(1));
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_CLOSED));
+        assertThat(mBackend.openedEvents, is(0));
+    }
+
+    @Test
+    public void testStaleOpen_closedWithoutEvents() {
+        mBackend.async = true;
+        mLifecycle.requestStart();
+        mExecutor.runAll();
+        mLifecycle.requestStop();
+        // The open completes before the stop gets to run
+        mBackend.completeOpen();
+        mExecutor.runAll();
+        assertThat(mBackend.opened, is(false));
+        assertThat(mBackend.openedEvents, is(0));
+        assertThat(mBackend.closedEvents, is(0));
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_CLOSED));
+    }
+
+    @Test
+    public void testOpenFailed() {
+        mBackend.fail = true;
+        mLifecycle.requestStart();
+        mExecutor.runAll();
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_CLOSED));
+        mBackend.fail = false;
+        mLifecycle.requestStart();
+        mExecutor.runAll();
+        assertThat(mBackend.starts, is(2));
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_PREVIEWING));
+    }
+
+    @Test
+    public void testUnexpectedClose_reopens() {
+        mLifecycle.requestStart();
+        mExecutor.runAll();
+        mBackend.close();
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_CLOSED));
+        mExecutor.runAll();
+        assertThat(mBackend.starts, is(2));
+        assertThat(mBackend.openedEvents, is(2));
+        assertThat(mBackend.closedEvents, is(1));
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_PREVIEWING));
+    }
+
+    @Test
+    public void testFailed_reopensOnNextStart() {
+        mLifecycle.requestStart();
+        mExecutor.runAll();
+        mBackend.opened = false;
+        assertThat(mLifecycle.onFailed(), is(true));
+        mExecutor.runAll();
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_CLOSED));
+        assertThat(mBackend.starts, is(1));
+        mLifecycle.requestStart();
+        mExecutor.runAll();
+        assertThat(mBackend.starts, is(2));
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_PREVIEWING));
+    }
+
+    @Test
+    public void testFailedWhileOpening() {
+        mBackend.async = true;
+        mLifecycle.requestStart();
+        mExecutor.runAll();
+        assertThat(mLifecycle.onFailed(), is(false));
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_CLOSED));
+        mLifecycle.requestStart();
+        mExecutor.runAll();
+        assertThat(mBackend.starts, is(2));
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_OPENING));
+    }
+
+    @Test
+    public void testReplacedCamera() {
+        mLifecycle.requestStart();
+        mExecutor.runAll();
+        // A facing switch closes one camera and opens another within one task
+        mBackend.close();
+        mBackend.completeOpen();
+        mExecutor.runAll();
+        assertThat(mBackend.starts, is(1));
+        assertThat(mBackend.openedEvents, is(2));
+        assertThat(mBackend.closedEvents, is(1));
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_PREVIEWING));
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class CameraMetricsTest {
+
+    @Test
+    public void testNoMeasurement() {
+        CameraMetrics metrics = new CameraMetrics();
+        assertThat(metrics.markFrame(100), is(false));
+        assertThat(metrics.getTimeToFirstFrameMillis(), is(-1L));
+    }
+
+    @Test
+    public void testPhases() {
+        CameraMetrics metrics = new CameraMetrics();
+        metrics.beginFirstFrame(1000);
+        metrics.markOpened(1300);
+        // A frame of the previous session
+        assertThat(metrics.markFrame(1350), is(false));
+        metrics.markPreviewStarted(1400);
+        assertThat(metrics.markFrame(1480), is(true));
+        assertThat(metrics.markFrame(1510), is(false));
+        assertThat(metrics.getOpenMillis(), is(300L));
+        assertThat(metrics.getConfigureMillis(), is(100L));
+        assertThat(metrics.getFirstFrameMillis(), is(80L));
+        assertThat(metrics.getTimeToFirstFrameMillis(), is(480L));
+    }
+
+    @Test
+    public void testBeginReplacesMeasurement() {
+        CameraMetrics metrics = new CameraMetrics();
+        metrics.beginFirstFrame(1000);
+        metrics.markOpened(1300);
+        metrics.beginFirstFrame(2000);
+        metrics.markPreviewStarted(2050);
+        // Not opened since the second begin
+        assertThat(metrics.markFrame(2100), is(false));
+        metrics.markOpened(2200);
+        metrics.markPreviewStarted(2250);
+        assertThat(metrics.markFrame(2300), is(true));
+        assertThat(metrics.getOpenMillis(), is(200L));
+        assertThat(metrics.getTimeToFirstFrameMillis(), is(300L));
+    }
+
+    @Test
+    public void testFocusLockSkipRate() {
+        CameraMetrics metrics = new CameraMetrics();
+        assertThat(metrics.getFocusLockSkipRate(), is(-1f));
+        metrics.recordFocusedCapture(true);
+        metrics.recordFocusedCapture(false);
+        metrics.recordFocusedCapture(true);
+        metrics.recordFocusedCapture(true);
+        assertThat(metrics.getFocusedCaptureCount(), is(4));
+        assertThat(metrics.getFocusLockSkipRate(), is(0.75f));
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class CaptureMemoryBudgetTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private static final List<Size> SIZES = Arrays.asList(
+            new Size(640, 480),
+            new Size(4000, 3000),
+            new Size(1920, 1080),
+            new Size(1920, 1440));
+
+    @Test
+    public void testUnlimited() {
+        CaptureMemoryBudget budget = new CaptureMemoryBudget();
+        assertThat(budget.choose(SIZES, null, 1), is(new Size(4000, 3000)));
+        assertThat(budget.choose(SIZES, AspectRatio.of(16, 9), 1), is(new Size(1920, 1080)));
+        assertThat(budget.maxImages(new Size(4000, 3000), 2), is(2));
+    }
+
+    @Test
+    public void testExplicitBudget() {
+        CaptureMemoryBudget budget = new CaptureMemoryBudget();
+        budget.setBudget(32 * MB);
+        assertThat(budget.choose(SIZES, AspectRatio.of(4, 3), 1), is(new Size(1920, 1440)));
+        assertThat(budget.maxImages(new Size(1920, 1440), 2), is(2));
+        budget.setBudget(27 * MB);
+        assertThat(budget.maxImages(new Size(1920, 1440), 2), is(1));
+    }
+
+    @Test
+    public void testNothingFits() {
+        CaptureMemoryBudget budget = new CaptureMemoryBudget();
+        budget.setBudget(1);
+        assertThat(budget.choose(SIZES, AspectRatio.of(4, 3), 1), is(new Size(640, 480)));
+        assertThat(budget.choose(SIZES, AspectRatio.of(1, 1), 1), is(nullValue()));
+    }
+
+    @Test
+    public void testAuto() {
+        CaptureMemoryBudget budget = new CaptureMemoryBudget();
+        budget.setBudget(Constants.CAPTURE_MEMORY_BUDGET_AUTO);
+        assertThat(budget.getEffectiveBudget(), is(Long.MAX_VALUE));
+        budget.setMemoryClass(64);
+        assertThat(budget.getEffectiveBudget(), is(32 * MB));
+        assertThat(budget.choose(SIZES, null, 1), is(new Size(1920, 1440)));
+    }
+
+    @Test
+    public void testDowngrade() {
+        CaptureMemoryBudget budget = new CaptureMemoryBudget();
+        budget.setMemoryClass(256);
+        budget.downgrade();
+        assertThat(budget.getEffectiveBudget(), is(128 * MB));
+        budget.downgrade();
+        assertThat(budget.getEffectiveBudget(), is(64 * MB));
+        assertThat(budget.choose(SIZES, null, 1), is(new Size(1920, 1440)));
+        budget.downgrade();
+        budget.downgrade();
+        assertThat(budget.getEffectiveBudget(), is(32 * MB));
+        budget.setBudget(Constants.CAPTURE_MEMORY_BUDGET_UNLIMITED);
+        assertThat(budget.getEffectiveBudget(), is(Long.MAX_VALUE));
+    }
+
+}
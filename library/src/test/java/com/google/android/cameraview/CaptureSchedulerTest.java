@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+public class CaptureSchedulerTest {
+
+    private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+
+    private final ArrayList<String> mStarted = new ArrayList<>();
+
+    private CaptureScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mTasks.clear();
+        mStarted.clear();
+        mScheduler = new CaptureScheduler(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mTasks.add(command);
+            }
+        }, 2);
+    }
+
+    @Test
+    public void testRunsOneJobAtATime() {
+        RecordingJob first = submit(CaptureScheduler.PRIORITY_CAPTURE, "first");
+        submit(CaptureScheduler.PRIORITY_CAPTURE, "second");
+        runTasks();
+        assertThat(mStarted.toString(), is("[first]"));
+        mScheduler.finish(first);
+        runTasks();
+        assertThat(mStarted.toString(), is("[first, second]"));
+    }
+
+    @Test
+    public void testNextJobIsScheduledAsSoonAsTheRunningOneFinishes() {
+        RecordingJob first = submit(CaptureScheduler.PRIORITY_CAPTURE, "first");
+        runTasks();
+        submit(CaptureScheduler.PRIORITY_CAPTURE, "second");
+        assertThat(mTasks.size(), is(0));
+        mScheduler.finish(first);
+        assertThat(mTasks.size(), is(1));
+    }
+
+    @Test
+    public void testFocusRunsBeforeWaitingCaptures() {
+        RecordingJob first = submit(CaptureScheduler.PRIORITY_CAPTURE, "capture1");
+        runTasks();
+        submit(CaptureScheduler.PRIORITY_CAPTURE, "capture2");
+        submit(CaptureScheduler.PRIORITY_FOCUS, "focus");
+        mScheduler.finish(first);
+        runTasks();
+        assertThat(mStarted.toString(), is("[capture1, focus]"));
+    }
+
+    @Test
+    public void testRejectsWhenFull() {
+        submit(CaptureScheduler.PRIORITY_CAPTURE, "running");
+        runTasks();
+        assertThat(mScheduler.submit(CaptureScheduler.PRIORITY_CAPTURE, new RecordingJob("a")),
+                is(true));
+        assertThat(mScheduler.submit(CaptureScheduler.PRIORITY_CAPTURE, new RecordingJob("b")),
+                is(true));
+        assertThat(mScheduler.submit(CaptureScheduler.PRIORITY_FOCUS, new RecordingJob("c")),
+                is(false));
+        assertThat(mScheduler.getPendingCount(), is(2));
+    }
+
+    @Test
+    public void testCancelAllIgnoresLateFinish() {
+        RecordingJob running = submit(CaptureScheduler.PRIORITY_CAPTURE, "running");
+        runTasks();
+        submit(CaptureScheduler.PRIORITY_CAPTURE, "waiting");
+        assertThat(mScheduler.cancelAll(), is(2));
+        assertThat(mScheduler.isIdle(), is(true));
+        // The callback of the cancelled job arrives anyway
+        mScheduler.finish(running);
+        runTasks();
+        assertThat(mStarted.toString(), is("[running]"));
+        submit(CaptureScheduler.PRIORITY_CAPTURE, "after");
+        runTasks();
+        assertThat(mStarted.toString(), is("[running, after]"));
+    }
+
+    @Test
+    public void testJobFinishingWithinRun() {
+        mScheduler = new CaptureScheduler(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }, 2);
+        mScheduler.submit(CaptureScheduler.PRIORITY_CAPTURE, new FailingJob("a"));
+        assertThat(mScheduler.isIdle(), is(true));
+        mScheduler.submit(CaptureScheduler.PRIORITY_CAPTURE, new FailingJob("b"));
+        assertThat(mStarted.toString(), is("[a, b]"));
+    }
+
+    private RecordingJob submit(int priority, String name) {
+        RecordingJob job = new RecordingJob(name);
+        assertThat(mScheduler.submit(priority, job), is(true));
+        return job;
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = mTasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private class RecordingJob implements CaptureScheduler.Job {
+
+        final String mName;
+
+        RecordingJob(String name) {
+            mName = name;
+        }
+
+        @Override
+        public void run() {
+            mStarted.add(mName);
+        }
+
+    }
+
+    /**
+     * Fails to start the camera operation, like a takePicture() that throws.
+     */
+    private class FailingJob extends RecordingJob {
+
+        FailingJob(String name) {
+            super(name);
+        }
+
+        @Override
+        public void run() {
+            super.run();
+            mScheduler.finish(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import android.hardware.camera2.CaptureResult;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ControlStateHistoryTest {
+
+    private static final int FOCUSED = CaptureResult.CONTROL_AF_STATE_PASSIVE_FOCUSED;
+
+    private static final int SCANNING = CaptureResult.CONTROL_AF_STATE_PASSIVE_SCAN;
+
+    private static final int AE_CONVERGED = CaptureResult.CONTROL_AE_STATE_CONVERGED;
+
+    private static final int AWB_CONVERGED = CaptureResult.CONTROL_AWB_STATE_CONVERGED;
+
+    private ControlStateHistory mHistory;
+
+    @Before
+    public void setUp() {
+        mHistory = new ControlStateHistory(4);
+    }
+
+    @Test
+    public void testEmpty() {
+        assertThat(mHistory.isConverged(0, 100), is(false));
+    }
+
+    @Test
+    public void testConvergedFrames() {
+        recordConverged(1, 3);
+        assertThat(mHistory.isConverged(1030, 100), is(true));
+    }
+
+    @Test
+    public void testTooFewFrames() {
+        recordConverged(1, ControlStateHistory.STABLE_FRAMES - 1);
+        assertThat(mHistory.isConverged(1030, 100), is(false));
+    }
+
+    @Test
+    public void testStale() {
+        recordConverged(1, 3);
+        assertThat(mHistory.isConverged(1500, 100), is(false));
+    }
+
+    @Test
+    public void testScanningFrameAmongRecentOnes() {
+        recordConverged(1, 2);
+        mHistory.record(3, 1030, SCANNING, AE_CONVERGED, AWB_CONVERGED);
+        recordConverged(4, 2);
+        assertThat(mHistory.isConverged(1060, 100), is(false));
+        recordConverged(6, 1);
+        assertThat(mHistory.isConverged(1070, 100), is(true));
+    }
+
+    @Test
+    public void testFlashRequired() {
+        recordConverged(1, 2);
+        mHistory.record(3, 1030, FOCUSED, CaptureResult.CONTROL_AE_STATE_FLASH_REQUIRED,
+                AWB_CONVERGED);
+        assertThat(mHistory.isConverged(1030, 100), is(false));
+    }
+
+    @Test
+    public void testUnreportedAeAndAwb() {
+        for (int frame = 1; frame <= 3; frame++) {
+            mHistory.record(frame, 1000 + frame, FOCUSED, ControlStateHistory.STATE_UNKNOWN,
+                    ControlStateHistory.STATE_UNKNOWN);
+        }
+        assertThat(mHistory.isConverged(1003, 100), is(true));
+    }
+
+    @Test
+    public void testDroppedFrame() {
+        recordConverged(1, 2);
+        recordConverged(4, 1);
+        assertThat(mHistory.isConverged(1010, 100), is(false));
+    }
+
+    @Test
+    public void testClear() {
+        recordConverged(1, 3);
+        mHistory.clear();
+        assertThat(mHistory.isConverged(1030, 100), is(false));
+    }
+
+    @Test
+    public void testWrapsAround() {
+        mHistory.record(1, 1000, SCANNING, AE_CONVERGED, AWB_CONVERGED);
+        recordConverged(2, 9);
+        assertThat(mHistory.isConverged(1100, 100), is(true));
+    }
+
+    /**
+     * Records {@code count} converged frames starting at {@code first}, 10ms apart from 1000ms.
+     */
+    private void recordConverged(long first, int count) {
+        for (long frame = first; frame < first + count; frame++) {
+            mHistory.record(frame, 1000 + frame * 10, FOCUSED, AE_CONVERGED, AWB_CONVERGED);
+        }
+    }
+
+}
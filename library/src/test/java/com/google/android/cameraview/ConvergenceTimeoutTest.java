@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class ConvergenceTimeoutTest {
+
+    @Test
+    public void testFramesOrTimeWhicheverFirst() {
+        ConvergenceTimeout timeout = new ConvergenceTimeout(10, 500);
+        assertThat(timeout.isExpired(9, 499), is(false));
+        assertThat(timeout.isExpired(10, 100), is(true));
+        assertThat(timeout.isExpired(2, 500), is(true));
+    }
+
+    @Test
+    public void testZeroLeavesOutLimit() {
+        ConvergenceTimeout framesOnly = new ConvergenceTimeout(10, 0);
+        assertThat(framesOnly.isExpired(9, Long.MAX_VALUE), is(false));
+        assertThat(framesOnly.isExpired(10, 0), is(true));
+        ConvergenceTimeout none = new ConvergenceTimeout(0, 0);
+        assertThat(none.isExpired(Integer.MAX_VALUE, Long.MAX_VALUE), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegative() {
+        new ConvergenceTimeout(-1, 100);
+    }
+
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+import android.hardware.Camera;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A camera backend that needs no device: opening, configuring the preview, locking focus and
+ * encoding a JPEG each take a scripted time on a {@link FakeCameraThread}, and pictures are
+ * synthetic JPEG payloads of a configurable size. Captures and focus requests go through a
+ * {@link CaptureScheduler} like {@link Camera1}'s, and focus locks are bounded by the focus
+ * {@link ConvergenceTimeout}.
+ *
+ * <p>Together with {@link FakePreview} it lets the lifecycle, capture scheduling, callback
+ * dispatch and memory budget be measured and regression-tested on a plain JVM.</p>
+ */
+class FakeCameraBackend extends CameraViewImpl {
+
+    static final int MAX_PENDING_CAPTURES = 3;
+
+    private final FakeCameraThread mThread;
+
+    private final CaptureScheduler mCaptureScheduler;
+
+    private long mOpenLatencyMillis;
+
+    private long mConfigureLatencyMillis;
+
+    private long mFocusLockLatencyMillis;
+
+    private long mJpegLatencyMillis;
+
+    /** The size of the synthetic JPEGs, or -1 to estimate it from the capture size. */
+    private int mJpegBytes = -1;
+
+    private boolean mFailOpen;
+
+    private List<Size> mCaptureSizes = Collections.singletonList(new Size(4032, 3024));
+
+    private Size mPreviewSize = new Size(1440, 1080);
+
+    private int mSensorOrientation = 90;
+
+    /** Incremented on every start and stop, so that the steps of an earlier start are dropped. */
+    private int mGeneration;
+
+    private boolean mOpened;
+
+    private boolean mPreviewing;
+
+    private Size mCaptureSize;
+
+    private int mFacing = Constants.FACING_BACK;
+
+    private boolean mAutoFocus = true;
+
+    private int mFlash = Constants.FLASH_AUTO;
+
+    private int mDisplayOrientation;
+
+    private List<Camera.Area> mMeteringAreas;
+
+    private int mOpenCount;
+
+    private int mPicturesTaken;
+
+    private int mCapturesRejected;
+
+    private long mJpegBytesDelivered;
+
+    FakeCameraBackend(Callback callback, FakePreview preview, FakeCameraThread thread) {
+        super(callback, preview);
+        mThread = thread;
+        mCaptureScheduler = new CaptureScheduler(thread, MAX_PENDING_CAPTURES);
+        preview.setCallback(new PreviewImpl.Callback() {
+            @Override
+            public void onSurfaceChanged() {
+                if (mOpened && !mPreviewing) {
+                    startPreview(mGeneration);
+                }
+            }
+        });
+    }
+
+    void setOpenLatency(long millis) {
+        mOpenLatencyMillis = millis;
+    }
+
+    void setConfigureLatency(long millis) {
+        mConfigureLatencyMillis = millis;
+    }
+
+    void setFocusLockLatency(long millis) {
+        mFocusLockLatencyMillis = millis;
+    }
+
+    void setJpegLatency(long millis) {
+        mJpegLatencyMillis = millis;
+    }
+
+    /**
+     * @param bytes The size of every picture, or -1 to estimate it from the capture size.
+     */
+    void setJpegBytes(int bytes) {
+        mJpegBytes = bytes;
+    }
+
+    void setFailOpen(boolean failOpen) {
+        mFailOpen = failOpen;
+    }
+
+    void setCaptureSizes(List<Size> captureSizes) {
+        mCaptureSizes = new ArrayList<>(captureSizes);
+    }
+
+    void setPreviewSize(Size previewSize) {
+        mPreviewSize = previewSize;
+    }
+
+    @Override
+    boolean start() {
+        if (mFailOpen) {
+            return false;
+        }
+        final int generation = ++mGeneration;
+        mThread.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mGeneration) {
+                    return;
+                }
+                mOpenCount++;
+                mOpened = true;
+                mCaptureSize = mCaptureMemoryBudget.choose(mCaptureSizes, null, 1);
+                mCallback.onCameraOpened();
+                if (mPreview.isReady()) {
+                    startPreview(generation);
+                }
+            }
+        }, mOpenLatencyMillis);
+        return true;
+    }
+
+    private void startPreview(final int generation) {
+        mThread.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mGeneration || mPreviewing) {
+                    return;
+                }
+                mPreviewing = true;
+                mPreview.setTruePreviewSize(mPreviewSize.getWidth(), mPreviewSize.getHeight());
+                mCallback.onPreviewStarted();
+            }
+        }, mConfigureLatencyMillis);
+    }
+
+    @Override
+    void stop() {
+        mGeneration++;
+        mCaptureScheduler.cancelAll();
+        boolean wasOpened = mOpened;
+        mOpened = false;
+        mPreviewing = false;
+        mCaptureSize = null;
+        if (wasOpened) {
+            mCallback.onCameraClosed();
+        }
+    }
+
+    @Override
+    boolean isCameraOpened() {
+        return mOpened;
+    }
+
+    boolean isPreviewing() {
+        return mPreviewing;
+    }
+
+    @Override
+    void setFacing(int facing) {
+        if (mFacing == facing) {
+            return;
+        }
+        mFacing = facing;
+        if (mOpened) {
+            stop();
+            start();
+        }
+    }
+
+    @Override
+    int getFacing() {
+        return mFacing;
+    }
+
+    @Override
+    void setAutoFocus(boolean autoFocus) {
+        mAutoFocus = autoFocus;
+    }
+
+    @Override
+    int toggleFacing() {
+        setFacing(mFacing == Constants.FACING_BACK ? Constants.FACING_FRONT
+                : Constants.FACING_BACK);
+        return mFacing;
+    }
+
+    @Override
+    boolean getAutoFocus() {
+        return mAutoFocus;
+    }
+
+    @Override
+    void setFlash(int flash) {
+        mFlash = flash;
+    }
+
+    @Override
+    int getFlash() {
+        return mFlash;
+    }
+
+    @Override
+    int toggleFlash() {
+        mFlash = nextFlash(mFlash);
+        return mFlash;
+    }
+
+    @Override
+    void takePicture() {
+        if (!mPreviewing) {
+            return;
+        }
+        if (!mCaptureScheduler.submit(CaptureScheduler.PRIORITY_CAPTURE, new CaptureJob())) {
+            mCapturesRejected++;
+        }
+    }
+
+    @Override
+    void setDisplayOrientation(int displayOrientation) {
+        mDisplayOrientation = displayOrientation;
+        mPreview.setDisplayOrientation(displayOrientation);
+    }
+
+    int getDisplayOrientation() {
+        return mDisplayOrientation;
+    }
+
+    @Override
+    int getSensorOrientation() {
+        return mOpened ? mSensorOrientation : -1;
+    }
+
+    @Override
+    void setMeteringAndFocusAreas(List<Camera.Area> meteringAndFocusAreas) {
+        if (!mOpened) {
+            return;
+        }
+        mMeteringAreas = meteringAndFocusAreas;
+        mCaptureScheduler.submit(CaptureScheduler.PRIORITY_FOCUS, new FocusJob());
+    }
+
+    List<Camera.Area> getMeteringAreas() {
+        return mMeteringAreas;
+    }
+
+    @Override
+    Size getCaptureResolution() {
+        return mCaptureSize;
+    }
+
+    @Override
+    Size getPreviewResolution() {
+        return mOpened ? mPreviewSize : null;
+    }
+
+    int getOpenCount() {
+        return mOpenCount;
+    }
+
+    int getPicturesTaken() {
+        return mPicturesTaken;
+    }
+
+    int getCapturesRejected() {
+        return mCapturesRejected;
+    }
+
+    long getJpegBytesDelivered() {
+        return mJpegBytesDelivered;
+    }
+
+    boolean isCaptureIdle() {
+        return mCaptureScheduler.isIdle();
+    }
+
+    /**
+     * @return How long a focus lock takes, cut short by the focus timeout.
+     */
+    private long focusLockMillis() {
+        long maxMillis = mFocusTimeout.getMaxMillis();
+        if (maxMillis > 0 && mFocusLockLatencyMillis > maxMillis) {
+            return maxMillis;
+        }
+        return mFocusLockLatencyMillis;
+    }
+
+    private boolean focusTimesOut() {
+        return focusLockMillis() < mFocusLockLatencyMillis;
+    }
+
+    /**
+     * Locks focus if auto-focus is on, then encodes and delivers a picture.
+     */
+    private class CaptureJob implements CaptureScheduler.Job {
+
+        private final Runnable mShutter = new Runnable() {
+            @Override
+            public void run() {
+                if (!mCaptureScheduler.isRunning(CaptureJob.this)) {
+                    return;
+                }
+                mThread.postDelayed(mDeliver, mJpegLatencyMillis);
+            }
+        };
+
+        private final Runnable mDeliver = new Runnable() {
+            @Override
+            public void run() {
+                if (!mCaptureScheduler.isRunning(CaptureJob.this)) {
+                    return;
+                }
+                int bytes = mJpegBytes >= 0 ? mJpegBytes
+                        : (int) CaptureMemoryBudget.estimateJpegBytes(mCaptureSize);
+                CameraData cameraData = new CameraData();
+                cameraData.setJpegData(new byte[bytes]);
+                mPicturesTaken++;
+                mJpegBytesDelivered += bytes;
+                mCallback.onPictureTaken(cameraData);
+                mCaptureScheduler.finish(CaptureJob.this);
+            }
+        };
+
+        @Override
+        public void run() {
+            if (!mOpened) {
+                mCaptureScheduler.finish(this);
+                return;
+            }
+            if (mAutoFocus) {
+                if (focusTimesOut()) {
+                    mMetrics.recordFocusTimeout();
+                }
+                mThread.postDelayed(mShutter, focusLockMillis());
+            } else {
+                mShutter.run();
+            }
+        }
+
+    }
+
+    private class FocusJob implements CaptureScheduler.Job {
+
+        @Override
+        public void run() {
+            if (!mOpened) {
+                mCaptureScheduler.finish(this);
+                return;
+            }
+            if (focusTimesOut()) {
+                mMetrics.recordFocusTimeout();
+            }
+            mThread.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    mCaptureScheduler.finish(FocusJob.this);
+                }
+            }, focusLockMillis());
+        }
+
+    }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class FakeCameraBackendTest {
+
+    private FakeCameraThread mThread;
+    private FakePreview mPreview;
+    private FakeCameraBackend mBackend;
+    private CameraLifecycle mLifecycle;
+    private CameraMetrics mMetrics;
+    private CallbackBridge mBridge;
+    private RecordingListener mRecorder;
+
+    @Before
+    public void setUp() {
+        mThread = new FakeCameraThread();
+        mPreview = new FakePreview();
+        mPreview.setSurfaceSize(1080, 1440);
+        mMetrics = new CameraMetrics();
+        mLifecycle = new CameraLifecycle(mThread, new CameraLifecycle.Backend() {
+            @Override
+            public boolean start() {
+                // As CameraView does, on the camera thread
+                mMetrics.beginFirstFrame(mThread.now());
+                return mBackend.start();
+            }
+
+            @Override
+            public void stop() {
+                mBackend.stop();
+            }
+        });
+        // The listeners are called on the camera thread, which stands in for the main thread
+        mBridge = new CallbackBridge(null, mLifecycle, mMetrics, mThread, mThread);
+        mBackend = new FakeCameraBackend(mBridge, mPreview, mThread);
+        mBackend.setMetrics(mMetrics);
+        mBridge.setImpl(mBackend);
+        mPreview.setFrameCallback(mBridge);
+        mRecorder = new RecordingListener();
+        mBridge.add(mRecorder, mThread);
+    }
+
+    private void startAndSettle() {
+        mLifecycle.requestStart();
+        mThread.runUntilIdle();
+    }
+
+    @Test
+    public void testTimeToFirstFrame() {
+        mBackend.setOpenLatency(300);
+        mBackend.setConfigureLatency(120);
+        startAndSettle();
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_PREVIEWING));
+        assertThat(mThread.now(), is(420L));
+        assertThat(mRecorder.mEvents, is(Arrays.asList("opened")));
+        assertThat(mPreview.getTrueWidth(), is(1440));
+        // Nothing is measured until a frame reaches the view
+        assertThat(mMetrics.getTimeToFirstFrameMillis(), is(-1L));
+        mThread.advanceBy(50);
+        mPreview.deliverFrame();
+        mThread.runUntilIdle();
+        assertThat(mMetrics.getOpenMillis(), is(300L));
+        assertThat(mMetrics.getConfigureMillis(), is(120L));
+        assertThat(mMetrics.getFirstFrameMillis(), is(50L));
+        assertThat(mMetrics.getTimeToFirstFrameMillis(), is(470L));
+        assertThat(mRecorder.mEvents, is(Arrays.asList("opened", "first frame 470")));
+        // Only the first frame completes the measurement
+        mPreview.deliverFrame();
+        mThread.runUntilIdle();
+        assertThat(mRecorder.mEvents.size(), is(2));
+    }
+
+    @Test
+    public void testFramesBeforePreviewStartIgnored() {
+        mBackend.setOpenLatency(300);
+        mBackend.setConfigureLatency(120);
+        mLifecycle.requestStart();
+        mThread.advanceBy(350);
+        // A frame left over from the last session, with the camera open but not previewing
+        mPreview.deliverFrame();
+        assertThat(mMetrics.getFirstFrameMillis(), is(-1L));
+        mThread.runUntilIdle();
+        mPreview.deliverFrame();
+        mThread.runUntilIdle();
+        assertThat(mMetrics.getFirstFrameMillis(), is(0L));
+        assertThat(mMetrics.getTimeToFirstFrameMillis(), is(420L));
+    }
+
+    @Test
+    public void testPreviewWaitsForSurface() {
+        mPreview.setSurfaceSize(0, 0);
+        startAndSettle();
+        assertThat(mBackend.isCameraOpened(), is(true));
+        assertThat(mBackend.isPreviewing(), is(false));
+        mPreview.setSurfaceSize(1080, 1440);
+        mThread.runUntilIdle();
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_PREVIEWING));
+    }
+
+    @Test
+    public void testStopWhileOpening() {
+        mBackend.setOpenLatency(500);
+        mLifecycle.requestStart();
+        mThread.advanceBy(100);
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_OPENING));
+        mLifecycle.requestStop();
+        mThread.runUntilIdle();
+        assertThat(mBackend.getOpenCount(), is(0));
+        assertThat(mLifecycle.getState(), is(CameraLifecycle.STATE_CLOSED));
+        assertThat(mRecorder.mEvents.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testCaptureThroughput() {
+        mBackend.setFocusLockLatency(200);
+        mBackend.setJpegLatency(150);
+        mBackend.setJpegBytes(1000);
+        startAndSettle();
+        long start = mThread.now();
+        for (int i = 0; i < 5; i++) {
+            mBackend.takePicture();
+        }
+        assertThat(mBackend.getCapturesRejected(), is(5 - FakeCameraBackend.MAX_PENDING_CAPTURES));
+        mThread.runUntilIdle();
+        assertThat(mBackend.getPicturesTaken(), is(FakeCameraBackend.MAX_PENDING_CAPTURES));
+        // One capture at a time, each locking focus and then encoding
+        assertThat(mThread.now() - start, is(FakeCameraBackend.MAX_PENDING_CAPTURES * 350L));
+        assertThat(mRecorder.mEvents.get(1), is("picture 1000"));
+        assertThat(mBackend.isCaptureIdle(), is(true));
+    }
+
+    @Test
+    public void testFocusLockBoundedByTimeout() {
+        mBackend.setFocusLockLatency(5000);
+        mBackend.setJpegLatency(100);
+        mBackend.setConvergenceTimeouts(new ConvergenceTimeout(0, 800),
+                ConvergenceTimeout.DEFAULT);
+        startAndSettle();
+        long start = mThread.now();
+        mBackend.takePicture();
+        mThread.runUntilIdle();
+        assertThat(mThread.now() - start, is(900L));
+        assertThat(mMetrics.getFocusTimeoutCount(), is(1));
+        assertThat(mBackend.getPicturesTaken(), is(1));
+    }
+
+    @Test
+    public void testFocusRunsBeforeWaitingCaptures() {
+        mBackend.setFocusLockLatency(100);
+        startAndSettle();
+        mBackend.takePicture();
+        mThread.advanceBy(0);
+        // The first capture is under way; the focus request jumps ahead of the second
+        mBackend.takePicture();
+        mBackend.setMeteringAndFocusAreas(null);
+        assertThat(mBackend.getPicturesTaken(), is(0));
+        mThread.advanceBy(100);
+        assertThat(mBackend.getPicturesTaken(), is(1));
+        mThread.advanceBy(100);
+        assertThat(mBackend.getPicturesTaken(), is(1));
+        mThread.advanceBy(100);
+        assertThat(mBackend.getPicturesTaken(), is(2));
+    }
+
+    @Test
+    public void testStopDropsCaptures() {
+        mBackend.setJpegLatency(300);
+        startAndSettle();
+        mBackend.takePicture();
+        mBackend.takePicture();
+        mThread.advanceBy(100);
+        mLifecycle.requestStop();
+        mThread.runUntilIdle();
+        assertThat(mBackend.getPicturesTaken(), is(0));
+        assertThat(mBackend.isCaptureIdle(), is(true));
+        assertThat(mRecorder.mEvents, is(Arrays.asList("opened", "closed")));
+    }
+
+    @Test
+    public void testMemoryBudgetPicksCaptureSize() {
+        Size large = new Size(4032, 3024);
+        Size small = new Size(1600, 1200);
+        mBackend.setCaptureSizes(Arrays.asList(large, small));
+        CaptureMemoryBudget budget = new CaptureMemoryBudget();
+        budget.setBudget(CaptureMemoryBudget.estimateCost(small, 1));
+        mBackend.setCaptureMemoryBudget(budget);
+        startAndSettle();
+        assertThat(mBackend.getCaptureResolution(), is(small));
+        mBackend.takePicture();
+        mThread.runUntilIdle();
+        assertThat(mBackend.getJpegBytesDelivered(),
+                is(CaptureMemoryBudget.estimateJpegBytes(small)));
+    }
+
+    @Test
+    public void testSlowListenerDoesNotHoldUpCamera() {
+        ManualExecutor busy = new ManualExecutor();
+        RecordingListener slow = new RecordingListener();
+        mBridge.add(slow, busy);
+        mBackend.setJpegBytes(10);
+        startAndSettle();
+        mBackend.takePicture();
+        mBackend.takePicture();
+        mThread.runUntilIdle();
+        assertThat(mBackend.getPicturesTaken(), is(2));
+        assertThat(mRecorder.mEvents.size(), is(3));
+        assertThat(slow.mEvents.size(), is(0));
+        busy.runAll();
+        assertThat(slow.mEvents, is(Arrays.asList("opened", "picture 10", "picture 10")));
+    }
+
+    @Test
+    public void testSensorOrientationOnlyWhenOpen() {
+        assertThat(mBackend.getSensorOrientation(), is(-1));
+        assertThat(mBackend.getPreviewResolution(), is(nullValue()));
+        startAndSettle();
+        assertThat(mBackend.getSensorOrientation(), is(90));
+        assertThat(mBackend.getPreviewResolution(), is(notNullValue()));
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * A camera thread that runs in virtual time: tasks only run when the clock is advanced, in the
+ * order of their due time and then of posting, so that latencies scripted on a fake backend give
+ * the same result on every run without sleeping.
+ */
+class FakeCameraThread implements Executor, CallbackBridge.Clock {
+
+    private static class Task implements Comparable<Task> {
+
+        final Runnable mRunnable;
+        final long mDueMillis;
+        final long mSequence;
+
+        Task(Runnable runnable, long dueMillis, long sequence) {
+            mRunnable = runnable;
+            mDueMillis = dueMillis;
+            mSequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (mDueMillis != other.mDueMillis) {
+                return mDueMillis < other.mDueMillis ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+
+    }
+
+    private final PriorityQueue<Task> mTasks = new PriorityQueue<>();
+
+    private long mNowMillis;
+
+    private long mSequence;
+
+    private int mTasksRun;
+
+    @Override
+    public long now() {
+        return mNowMillis;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        postDelayed(command, 0);
+    }
+
+    void postDelayed(Runnable runnable, long delayMillis) {
+        mTasks.add(new Task(runnable, mNowMillis + Math.max(0, delayMillis), mSequence++));
+    }
+
+    /**
+     * Removes every pending instance of {@code runnable}.
+     */
+    void removeCallbacks(Runnable runnable) {
+        for (Task task : mTasks.toArray(new Task[mTasks.size()])) {
+            if (task.mRunnable == runnable) {
+                mTasks.remove(task);
+            }
+        }
+    }
+
+    int getPendingCount() {
+        return mTasks.size();
+    }
+
+    int getTasksRun() {
+        return mTasksRun;
+    }
+
+    /**
+     * Moves the clock forward by {@code millis}, running the tasks that fall due on the way.
+     */
+    void advanceBy(long millis) {
+        long target = mNowMillis + millis;
+        Task task;
+        while ((task = mTasks.peek()) != null && task.mDueMillis <= target) {
+            run(mTasks.poll());
+        }
+        mNowMillis = target;
+    }
+
+    /**
+     * Runs every task, moving the clock to each due time, until none is left.
+     */
+    void runUntilIdle() {
+        Task task;
+        while ((task = mTasks.poll()) != null) {
+            run(task);
+        }
+    }
+
+    private void run(Task task) {
+        mNowMillis = Math.max(mNowMillis, task.mDueMillis);
+        mTasksRun++;
+        task.mRunnable.run();
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+import android.view.Surface;
+import android.view.View;
+
+/**
+ * A preview without a view, for driving a backend on the JVM. The surface it hands out is
+ * {@code null}; backends under test only use it as a token.
+ */
+class FakePreview extends PreviewImpl {
+
+    private boolean mReady;
+
+    private boolean mHasCallback;
+
+    private int mDisplayOrientation;
+
+    /**
+     * Makes the surface available at {@code width} x {@code height}, as a view would once laid
+     * out, or takes it away for a size of zero.
+     */
+    void setSurfaceSize(int width, int height) {
+        mReady = width > 0 && height > 0;
+        nextSurfaceGeneration();
+        setSize(width, height);
+        if (mHasCallback) {
+            dispatchSurfaceChanged();
+        }
+    }
+
+    /**
+     * Hands a frame to the view, as the preview of a {@link android.view.TextureView} does for
+     * every frame it draws.
+     */
+    void deliverFrame() {
+        dispatchFrameAvailable();
+    }
+
+    @Override
+    void setCallback(Callback callback) {
+        super.setCallback(callback);
+        mHasCallback = callback != null;
+    }
+
+    int getDisplayOrientation() {
+        return mDisplayOrientation;
+    }
+
+    @Override
+    Surface getSurface() {
+        return null;
+    }
+
+    @Override
+    View getView() {
+        return null;
+    }
+
+    @Override
+    Class getOutputClass() {
+        return Object.class;
+    }
+
+    @Override
+    void setDisplayOrientation(int displayOrientation) {
+        mDisplayOrientation = displayOrientation;
+    }
+
+    @Override
+    boolean isReady() {
+        return mReady;
+    }
+
+    @Override
+    void setTruePreviewSize(int width, int height) {
+        // There is no view to transform, nor a main looper to do it on
+        mTrueWidth = width;
+        mTrueHeight = height;
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+
+public class ListenerListTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static ListenerList.Event<RecordingListener> event(final String name) {
+        return new ListenerList.Event<RecordingListener>() {
+            @Override
+            public void dispatch(RecordingListener listener) {
+                listener.mEvents.add(name);
+            }
+        };
+    }
+
+    @Test
+    public void testEachListenerOnItsExecutor() {
+        ListenerList<RecordingListener> listeners = new ListenerList<>();
+        RecordingListener direct = new RecordingListener();
+        RecordingListener queued = new RecordingListener();
+        ManualExecutor queue = new ManualExecutor();
+        listeners.add(direct, DIRECT);
+        listeners.add(queued, queue);
+        listeners.dispatch(event("a"));
+        assertThat(direct.mEvents.size(), is(1));
+        // The queued listener does not hold up the dispatch
+        assertThat(queued.mEvents.size(), is(0));
+        queue.runAll();
+        assertThat(queued.mEvents.get(0), is("a"));
+    }
+
+    @Test
+    public void testRemovedBeforeDelivery() {
+        ListenerList<RecordingListener> listeners = new ListenerList<>();
+        RecordingListener recorder = new RecordingListener();
+        ManualExecutor queue = new ManualExecutor();
+        listeners.add(recorder, queue);
+        listeners.dispatch(event("a"));
+        assertThat(listeners.remove(recorder), is(true));
+        queue.runAll();
+        assertThat(recorder.mEvents.size(), is(0));
+        assertThat(listeners.remove(recorder), is(false));
+        assertThat(listeners.size(), is(0));
+    }
+
+    @Test
+    public void testChangeDuringDispatch() {
+        final ListenerList<RecordingListener> listeners = new ListenerList<>();
+        final RecordingListener added = new RecordingListener();
+        final RecordingListener first = new RecordingListener();
+        listeners.add(first, DIRECT);
+        listeners.add(new RecordingListener(), new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                listeners.remove(first);
+                listeners.add(added, DIRECT);
+                command.run();
+            }
+        });
+        listeners.dispatch(event("a"));
+        // The dispatch in progress keeps to the listeners registered when it started
+        assertThat(first.mEvents.size(), is(1));
+        assertThat(added.mEvents.size(), is(0));
+        assertThat(listeners.size(), is(2));
+        listeners.dispatch(event("b"));
+        assertThat(first.mEvents.size(), is(1));
+        assertThat(added.mEvents.size(), is(1));
+    }
+
+    @Test
+    public void testDuplicates() {
+        ListenerList<RecordingListener> listeners = new ListenerList<>();
+        RecordingListener recorder = new RecordingListener();
+        listeners.add(recorder, DIRECT);
+        listeners.add(recorder, DIRECT);
+        listeners.dispatch(event("a"));
+        assertThat(recorder.mEvents.size(), is(2));
+        listeners.remove(recorder);
+        listeners.dispatch(event("b"));
+        assertThat(recorder.mEvents.size(), is(3));
+    }
+
+}
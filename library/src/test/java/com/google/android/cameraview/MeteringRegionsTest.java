@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class MeteringRegionsTest {
+
+    @Test
+    public void testCorners() {
+        assertThat(MeteringRegions.toSensor(-1000, 0, 4000), is(0));
+        assertThat(MeteringRegions.toSensor(1000, 0, 4000), is(3999));
+        assertThat(MeteringRegions.toSensor(0, 0, 4001), is(2000));
+    }
+
+    @Test
+    public void testOffsetFieldOfView() {
+        // A crop region starting at 500
+        assertThat(MeteringRegions.toSensor(-1000, 500, 2001), is(500));
+        assertThat(MeteringRegions.toSensor(1000, 500, 2001), is(2500));
+    }
+
+    @Test
+    public void testClamps() {
+        assertThat(MeteringRegions.toSensor(-5000, 0, 4000), is(0));
+        assertThat(MeteringRegions.toSensor(5000, 0, 4000), is(3999));
+    }
+
+    @Test
+    public void testRect() {
+        int[] out = new int[4];
+        MeteringRegions.toSensor(-100, -100, 100, 100, 0, 0, 4001, 3001, out);
+        assertThat(Arrays.toString(out), is("[1800, 1350, 2200, 1650]"));
+    }
+
+    @Test
+    public void testRectIsNeverEmpty() {
+        int[] out = new int[4];
+        MeteringRegions.toSensor(0, 0, 0, 0, 0, 0, 100, 100, out);
+        assertThat(Arrays.toString(out), is("[49, 49, 50, 50]"));
+        MeteringRegions.toSensor(1000, 1000, 1000, 1000, 0, 0, 100, 100, out);
+        assertThat(Arrays.toString(out), is("[98, 98, 99, 99]"));
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class PreviewGeometryTest {
+
+    private static final float DELTA = 0.01f;
+
+    @Test
+    public void testIdentity() {
+        PreviewGeometry geometry = new PreviewGeometry();
+        assertThat(geometry.update(1080, 1920, 1920, 1080, 0), is(true));
+        assertEquals(1, geometry.getScaleX(), DELTA);
+        assertEquals(1, geometry.getScaleY(), DELTA);
+        assertMaps(geometry, 0, 0, 0, 0);
+        assertMaps(geometry, 1080, 1920, 1080, 1920);
+        assertThat(geometry.update(1080, 1920, 1920, 1080, 180), is(true));
+        assertMaps(geometry, 100, 200, 100, 200);
+    }
+
+    @Test
+    public void testRotation90() {
+        PreviewGeometry geometry = new PreviewGeometry();
+        geometry.update(400, 300, 300, 400, 90);
+        assertMaps(geometry, 0, 0, 0, 300);
+        assertMaps(geometry, 400, 0, 0, 0);
+        assertMaps(geometry, 0, 300, 400, 300);
+        assertMaps(geometry, 400, 300, 400, 0);
+    }
+
+    @Test
+    public void testRotation270() {
+        PreviewGeometry geometry = new PreviewGeometry();
+        geometry.update(400, 300, 300, 400, 270);
+        assertMaps(geometry, 0, 0, 400, 0);
+        assertMaps(geometry, 400, 0, 400, 300);
+        assertMaps(geometry, 0, 300, 0, 0);
+        assertMaps(geometry, 400, 300, 0, 300);
+    }
+
+    @Test
+    public void testCropWidth() {
+        PreviewGeometry geometry = new PreviewGeometry();
+        // 4:3 buffers in a 16:9 portrait view overflow horizontally
+        geometry.update(1080, 1920, 1920, 1440, 0);
+        assertEquals(4f / 3, geometry.getScaleX(), DELTA);
+        assertEquals(1, geometry.getScaleY(), DELTA);
+        assertMaps(geometry, 540, 960, 540, 960);
+        assertMaps(geometry, 0, 0, -180, 0);
+        assertMaps(geometry, 1080, 1920, 1260, 1920);
+    }
+
+    @Test
+    public void testCropHeight() {
+        PreviewGeometry geometry = new PreviewGeometry();
+        // 16:9 buffers in a 4:3 portrait view overflow vertically
+        geometry.update(1080, 1440, 1920, 1080, 0);
+        assertEquals(1, geometry.getScaleX(), DELTA);
+        assertEquals(4f / 3, geometry.getScaleY(), DELTA);
+        assertMaps(geometry, 540, 720, 540, 720);
+        assertMaps(geometry, 0, 0, 0, -240);
+    }
+
+    @Test
+    public void testRotationThenCrop() {
+        PreviewGeometry geometry = new PreviewGeometry();
+        geometry.update(1080, 1920, 1920, 1440, 90);
+        // The top right corner goes to the top left, then the scale moves it out of the view
+        assertMaps(geometry, 1080, 0, -180, 0);
+        assertMaps(geometry, 540, 960, 540, 960);
+    }
+
+    @Test
+    public void testCached() {
+        PreviewGeometry geometry = new PreviewGeometry();
+        assertThat(geometry.update(400, 300, 300, 400, 90), is(true));
+        float[] values = geometry.getValues();
+        assertThat(geometry.update(400, 300, 300, 400, 90), is(false));
+        assertThat(geometry.getValues() == values, is(true));
+        assertThat(geometry.update(400, 300, 300, 400, 270), is(true));
+        assertThat(geometry.update(400, 300, 400, 300, 270), is(true));
+        assertThat(geometry.update(300, 400, 400, 300, 270), is(true));
+    }
+
+    @Test
+    public void testNoBuffers() {
+        PreviewGeometry geometry = new PreviewGeometry();
+        geometry.update(400, 300, 0, 0, 0);
+        assertEquals(1, geometry.getScaleX(), DELTA);
+        assertEquals(1, geometry.getScaleY(), DELTA);
+        geometry.update(0, 0, 0, 0, 90);
+        assertMaps(geometry, 0, 0, 0, 0);
+    }
+
+    private static void assertMaps(PreviewGeometry geometry, float x, float y,
+            float expectedX, float expectedY) {
+        float[] point = new float[]{x, y};
+        geometry.mapPoint(point);
+        assertEquals(expectedX, point[0], DELTA);
+        assertEquals(expectedY, point[1], DELTA);
+    }
+
+}
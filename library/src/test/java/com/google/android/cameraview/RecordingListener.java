@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes down the events it hears of, in order.
+ */
+class RecordingListener extends CameraListener {
+
+    final List<String> mEvents = new ArrayList<>();
+
+    @Override
+    public void onCameraOpened(CameraView cameraView) {
+        mEvents.add("opened");
+    }
+
+    @Override
+    public void onCameraClosed(CameraView cameraView) {
+        mEvents.add("closed");
+    }
+
+    @Override
+    public void onPictureTaken(CameraView cameraView, CameraData cameraData) {
+        mEvents.add("picture " + cameraData.getJpegData().length);
+    }
+
+    @Override
+    public void onFirstPreviewFrame(CameraView cameraView, long timeToFirstFrameMillis) {
+        mEvents.add("first frame " + timeToFirstFrameMillis);
+    }
+
+}
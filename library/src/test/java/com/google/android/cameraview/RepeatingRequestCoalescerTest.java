@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RepeatingRequestCoalescerTest {
+
+    private int mSubmitted;
+
+    private boolean mSubmitSucceeds;
+
+    private CameraMetrics mMetrics;
+
+    private RepeatingRequestCoalescer mCoalescer;
+
+    @Before
+    public void setUp() {
+        mSubmitted = 0;
+        mSubmitSucceeds = true;
+        mMetrics = new CameraMetrics();
+        mCoalescer = new RepeatingRequestCoalescer(new RepeatingRequestCoalescer.Submitter() {
+            @Override
+            public boolean submit() {
+                mSubmitted++;
+                return mSubmitSucceeds;
+            }
+        });
+        mCoalescer.setMetrics(mMetrics);
+    }
+
+    @Test
+    public void testFirstUpdateIsSubmittedRightAway() {
+        mCoalescer.requestUpdate();
+        assertThat(mSubmitted, is(1));
+        assertThat(mMetrics.getRepeatingRequestsSubmitted(), is(1));
+        assertThat(mMetrics.getRepeatingRequestsCoalesced(), is(0));
+    }
+
+    @Test
+    public void testUpdatesWithinAFrameAreCoalesced() {
+        mCoalescer.requestUpdate();
+        mCoalescer.requestUpdate();
+        mCoalescer.requestUpdate();
+        mCoalescer.requestUpdate();
+        assertThat(mSubmitted, is(1));
+        mCoalescer.onFrameCompleted();
+        assertThat(mSubmitted, is(2));
+        assertThat(mMetrics.getRepeatingRequestsSubmitted(), is(2));
+        assertThat(mMetrics.getRepeatingRequestsCoalesced(), is(2));
+        // Nothing changed since
+        mCoalescer.onFrameCompleted();
+        assertThat(mSubmitted, is(2));
+    }
+
+    @Test
+    public void testUpdateAfterFrameIsSubmittedRightAway() {
+        mCoalescer.requestUpdate();
+        mCoalescer.onFrameCompleted();
+        mCoalescer.requestUpdate();
+        assertThat(mSubmitted, is(2));
+    }
+
+    @Test
+    public void testHoldDefersUpdatesUntilResume() {
+        mCoalescer.hold();
+        mCoalescer.requestUpdate();
+        mCoalescer.onFrameCompleted();
+        mCoalescer.requestUpdate();
+        assertThat(mSubmitted, is(0));
+        assertThat(mCoalescer.resume(), is(true));
+        assertThat(mSubmitted, is(1));
+        mCoalescer.onFrameCompleted();
+        assertThat(mSubmitted, is(1));
+    }
+
+    @Test
+    public void testReleaseSubmitsOnlyChangesMadeWhileHeld() {
+        mCoalescer.hold();
+        assertThat(mCoalescer.release(), is(false));
+        assertThat(mSubmitted, is(0));
+        mCoalescer.hold();
+        mCoalescer.requestUpdate();
+        assertThat(mCoalescer.release(), is(true));
+        assertThat(mSubmitted, is(1));
+    }
+
+    @Test
+    public void testOverlappingHoldsWaitForTheLast() {
+        // A still capture that stops the preview, and a trigger that keeps it running
+        mCoalescer.hold();
+        mCoalescer.hold();
+        mCoalescer.requestUpdate();
+        assertThat(mCoalescer.release(), is(false));
+        mCoalescer.onFrameCompleted();
+        assertThat(mSubmitted, is(0));
+        // The stopped request goes out again with the last hold, along with the change
+        assertThat(mCoalescer.resume(), is(true));
+        assertThat(mSubmitted, is(1));
+        assertThat(mCoalescer.release(), is(false));
+        assertThat(mSubmitted, is(1));
+    }
+
+    @Test
+    public void testResumeWaitsForOtherHolds() {
+        mCoalescer.hold();
+        mCoalescer.hold();
+        assertThat(mCoalescer.resume(), is(false));
+        assertThat(mSubmitted, is(0));
+        // The request stopped by the first hold is submitted once the second ends
+        assertThat(mCoalescer.release(), is(true));
+        assertThat(mSubmitted, is(1));
+    }
+
+    @Test
+    public void testResumeReportsFailure() {
+        mSubmitSucceeds = false;
+        assertThat(mCoalescer.resume(), is(false));
+    }
+
+    @Test
+    public void testSubmitNowDoesNotWaitForFrame() {
+        mCoalescer.requestUpdate();
+        mCoalescer.requestUpdate();
+        assertThat(mCoalescer.submitNow(), is(true));
+        assertThat(mSubmitted, is(2));
+        // The pending change went out with it
+        mCoalescer.onFrameCompleted();
+        assertThat(mSubmitted, is(2));
+        mCoalescer.hold();
+        assertThat(mCoalescer.submitNow(), is(false));
+        assertThat(mCoalescer.resume(), is(true));
+        assertThat(mSubmitted, is(3));
+    }
+
+    @Test
+    public void testFailedSubmitDoesNotWaitForFrame() {
+        mSubmitSucceeds = false;
+        mCoalescer.requestUpdate();
+        assertThat(mMetrics.getRepeatingRequestsSubmitted(), is(0));
+        // No frame of a new request will come; the next update goes out right away
+        mSubmitSucceeds = true;
+        mCoalescer.requestUpdate();
+        assertThat(mSubmitted, is(2));
+        assertThat(mMetrics.getRepeatingRequestsSubmitted(), is(1));
+        assertThat(mMetrics.getRepeatingRequestsCoalesced(), is(0));
+    }
+
+    @Test
+    public void testResetDropsPendingChanges() {
+        mCoalescer.requestUpdate();
+        mCoalescer.requestUpdate();
+        mCoalescer.reset();
+        mCoalescer.onFrameCompleted();
+        assertThat(mSubmitted, is(1));
+        mCoalescer.requestUpdate();
+        assertThat(mSubmitted, is(2));
+    }
+
+}
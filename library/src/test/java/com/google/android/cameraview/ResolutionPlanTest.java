@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class ResolutionPlanTest {
+
+    private static ResolutionPlan plan() {
+        ResolutionPlan plan = new ResolutionPlan();
+        plan.getPreviewSizes().add(new Size(1920, 1080));
+        plan.getPreviewSizes().add(new Size(1280, 720));
+        plan.getPreviewSizes().add(new Size(1440, 1080));
+        plan.getPictureSizes().add(new Size(3840, 2160));
+        plan.getPictureSizes().add(new Size(1920, 1080));
+        plan.getPictureSizes().add(new Size(4000, 3000));
+        return plan;
+    }
+
+    @Test
+    public void testNotCollected() {
+        ResolutionPlan plan = new ResolutionPlan();
+        assertThat(plan.isCollected(), is(false));
+        assertThat(plan.getPreviewSize(1080, 1920), is(nullValue()));
+        assertThat(plan.getCaptureSize(new CaptureMemoryBudget(), 1, 1080, 1920),
+                is(nullValue()));
+    }
+
+    @Test
+    public void testSizes() {
+        ResolutionPlan plan = plan();
+        assertThat(plan.getPreviewSize(1080, 1920), is(new Size(1920, 1080)));
+        assertThat(plan.getCaptureSize(new CaptureMemoryBudget(), 1, 1080, 1920),
+                is(new Size(3840, 2160)));
+    }
+
+    @Test
+    public void testCached() {
+        ResolutionPlan plan = plan();
+        CaptureMemoryBudget budget = new CaptureMemoryBudget();
+        Size preview = plan.getPreviewSize(1080, 1920);
+        Size capture = plan.getCaptureSize(budget, 1, 1080, 1920);
+        assertThat(plan.getPreviewSize(1080, 1920), is(sameInstance(preview)));
+        budget.setBudget(CaptureMemoryBudget.estimateCost(new Size(1920, 1080), 1));
+        // The budget only applies once the capture size is invalidated
+        assertThat(plan.getCaptureSize(budget, 1, 1080, 1920), is(sameInstance(capture)));
+        plan.invalidateCaptureSize();
+        assertThat(plan.getCaptureSize(budget, 1, 1080, 1920), is(new Size(1920, 1080)));
+    }
+
+    @Test
+    public void testViewSizeChanged() {
+        ResolutionPlan plan = plan();
+        assertThat(plan.getPreviewSize(1080, 1920), is(new Size(1920, 1080)));
+        // Nothing covers this view; the largest size of any ratio is taken
+        assertThat(plan.getPreviewSize(2160, 3840), is(new Size(1920, 1080)));
+        assertThat(plan.getCommonAspectRatios(2160, 3840).isEmpty(), is(true));
+    }
+
+}
@@ -52,4 +52,14 @@ public class SizeMapTest {
         assertThat(map.ratios().size(), is(0));
     }
 
+    @Test
+    public void testAllSizes() {
+        SizeMap map = new SizeMap();
+        map.add(new Size(3, 4));
+        map.add(new Size(9, 16));
+        map.add(new Size(6, 8));
+        assertThat(map.allSizes().size(), is(3));
+        assertThat(map.allSizes().last(), is(new Size(9, 16)));
+    }
+
 }